@@ -14,6 +14,8 @@ import android.view.SurfaceView;
 import android.view.ViewGroup;
 
 import com.psiras.cellularautomata.model.CellularModel;
+import com.psiras.cellularautomata.model.FrameHandle;
+import com.psiras.cellularautomata.model.Initializer;
 import com.psiras.cellularautomata.model.ModelExecutor;
 import com.psiras.cellularautomata.model.ThreadExecutor;
 import com.psiras.cellularautomata.template.IllnessTemplate;
@@ -37,6 +39,7 @@ public class MainActivity extends Activity {
     // SurfaceView control
     static class DrawView extends SurfaceView implements Runnable, SurfaceHolder.Callback {
         public static final int scale = 1;
+        private static final int interval = 15; // ms between frames
         private static final Paint pencil = new Paint();
         private final ThreadExecutor painter = new ThreadExecutor(this, 1);
         private final ModelExecutor executor = new ModelExecutor(1.0f, 1);
@@ -77,9 +80,11 @@ public class MainActivity extends Activity {
                 final int width = Math.abs(frame.right - frame.left);
                 final int square = Bitwise.rndpow2(Math.min(height, width) / scale) >> 1;
                 //executor.setModel(new IllnessTemplate(square, square));
-                executor.setModel(new NeighborTemplate(square, square));
+                executor.setModel(new NeighborTemplate(square, square).initialize(Initializer.noise, System.nanoTime(), ModelExecutor.numproc));
+                executor.setRate(1000.0 / interval); // no generations nobody sees
                 executor.start();
             }
+            executor.resume();
 
             if (!painter.isActive()) {
                 painter.start();
@@ -98,6 +103,7 @@ public class MainActivity extends Activity {
         @Override
         public void surfaceDestroyed(SurfaceHolder holder) {
             background = true;
+            executor.pause();
         }
 
         private void paint_snapshot(Canvas canvas, byte[] snapshot, int height, int width, final int base) {
@@ -123,8 +129,10 @@ public class MainActivity extends Activity {
         }
 
         protected void paint(Canvas canvas) {
-            final CellularModel model = executor.getModel();
-            paint_snapshot(canvas, model.memory, model.height, model.width, executor.baseline());
+            try (FrameHandle frame = executor.pin()) {
+                final CellularModel model = frame.model;
+                paint_snapshot(canvas, frame.cells(), model.height, model.width, frame.base());
+            }
         }
 
         @Override
@@ -138,7 +146,7 @@ public class MainActivity extends Activity {
                         break;
                     }
                 } else try {
-                    Thread.sleep(15);
+                    Thread.sleep(interval);
                 } catch (InterruptedException e) {
                     break;
                 }
@@ -152,9 +160,12 @@ public class MainActivity extends Activity {
                 }
 
                 if (canvas != null) {
-                    final byte[] snapshot = executor.snapshot();
-                    final CellularModel model = executor.getModel();
-                    paint_snapshot(canvas, snapshot, model.height, model.width, 0);
+                    final long start = System.nanoTime();
+                    try (FrameHandle frame = executor.pin()) {
+                        final CellularModel model = frame.model;
+                        paint_snapshot(canvas, frame.cells(), model.height, model.width, frame.base());
+                    }
+                    executor.metrics().render.record(System.nanoTime() - start);
                     //paint(canvas);
                     holder.unlockCanvasAndPost(canvas);
                 } else {
@@ -0,0 +1,75 @@
+package com.psiras.cellularautomata.benchmarks;
+
+import com.psiras.cellularautomata.utils.Bitwise;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Bitwise helpers over a fixed batch of positive values
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitwiseBenchmark {
+    private static final int count = 1024;
+    private final int[] values = new int[count];
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(count);
+        for (int i = 0; i < count; ++i) {
+            values[i] = random.nextInt(Integer.MAX_VALUE) + 1;
+        }
+    }
+
+    @Benchmark
+    public void log2(Blackhole hole) {
+        for (int value : values) hole.consume(Bitwise.log2(value));
+    }
+
+    @Benchmark
+    public void trailing(Blackhole hole) {
+        for (int value : values) hole.consume(Bitwise.trailing(value));
+    }
+
+    @Benchmark
+    public void reverse(Blackhole hole) {
+        for (int value : values) hole.consume(Bitwise.reverse(value));
+    }
+
+    @Benchmark
+    public void dimreverse(Blackhole hole) {
+        for (int value : values) hole.consume(Bitwise.dimreverse(value));
+    }
+
+    @Benchmark
+    public void invert(Blackhole hole) {
+        for (int value : values) hole.consume(Bitwise.invert(value));
+    }
+
+    @Benchmark
+    public void rndpow2(Blackhole hole) {
+        for (int value : values) hole.consume(Bitwise.rndpow2(value >>> 1));
+    }
+
+    @Benchmark
+    public void tree_next(Blackhole hole) {
+        final int decn = count - 1;
+        final int half = count >>> 1;
+        for (int it = count; it != decn; it = Bitwise.tree_next(decn, half, it)) hole.consume(it);
+    }
+}
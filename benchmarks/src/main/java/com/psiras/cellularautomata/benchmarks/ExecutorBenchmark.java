@@ -0,0 +1,66 @@
+package com.psiras.cellularautomata.benchmarks;
+
+import com.psiras.cellularautomata.model.Initializer;
+import com.psiras.cellularautomata.model.ModelExecutor;
+import com.psiras.cellularautomata.template.Templates;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Full-generation throughput of a running ModelExecutor, each call waits for one more generation.
+// Depth above 1 runs tile passes, see BandScheduler
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ExecutorBenchmark {
+    @Param({"illness", "neighbor"})
+    public String template;
+
+    @Param({"1024"})
+    public int size;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"1", "4"})
+    public int depth;
+
+    private ModelExecutor executor;
+    private long counted; // generations handed out by calls so far, passes finish several at once
+
+    @Setup
+    public void setup() {
+        executor = new ModelExecutor(threads);
+        executor.setModel(Templates.create(template, size, size).initialize(Initializer.noise, size, ModelExecutor.numproc), 0, depth);
+        executor.start();
+        counted = executor.generation();
+    }
+
+    @TearDown
+    public void teardown() {
+        executor.terminate();
+    }
+
+    @Benchmark
+    public long generation() {
+        final long target = ++counted;
+        long generation;
+        while ((generation = executor.generation()) < target) Thread.yield();
+        return generation;
+    }
+}
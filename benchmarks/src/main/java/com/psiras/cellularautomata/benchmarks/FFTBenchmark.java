@@ -0,0 +1,81 @@
+package com.psiras.cellularautomata.benchmarks;
+
+import com.psiras.cellularautomata.utils.Complex;
+import com.psiras.cellularautomata.utils.FFT;
+import com.psiras.cellularautomata.utils.FloatFFT;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 2D transforms of a size * size grid, inputs are restored from a copy before every call
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FFTBenchmark {
+    @Param({"64", "256", "512"})
+    public int size;
+
+    private Complex[] complex;
+    private Complex[] complexwork;
+    private float[] re;
+    private float[] im;
+    private float[] rework;
+    private float[] imwork;
+    private byte[] image;
+    private byte[] imagework;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(size);
+        final int count = size * size;
+        complex = new Complex[count];
+        complexwork = new Complex[count];
+        re = new float[count];
+        im = new float[count];
+        rework = new float[count];
+        imwork = new float[count];
+        image = new byte[count];
+        imagework = new byte[count];
+
+        for (int i = 0; i < count; ++i) {
+            re[i] = random.nextFloat();
+            complex[i] = new Complex(re[i], 0.0f);
+            image[i] = (byte)random.nextInt(Byte.MAX_VALUE);
+        }
+    }
+
+    @Benchmark
+    public Complex[] fft2() {
+        System.arraycopy(complex, 0, complexwork, 0, complex.length);
+        return FFT.fft2(complexwork, size);
+    }
+
+    @Benchmark
+    public float[] floatfft2() {
+        System.arraycopy(re, 0, rework, 0, re.length);
+        System.arraycopy(im, 0, imwork, 0, im.length);
+        FloatFFT.fft2(rework, imwork, size);
+        return rework;
+    }
+
+    @Benchmark
+    public byte[] image_fft() {
+        System.arraycopy(image, 0, imagework, 0, image.length);
+        return FFT.image_fft(imagework, size, true);
+    }
+}
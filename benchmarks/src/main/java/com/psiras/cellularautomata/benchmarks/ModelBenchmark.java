@@ -0,0 +1,53 @@
+package com.psiras.cellularautomata.benchmarks;
+
+import com.psiras.cellularautomata.model.CellularModel;
+import com.psiras.cellularautomata.model.Initializer;
+import com.psiras.cellularautomata.model.ModelExecutor;
+import com.psiras.cellularautomata.template.Templates;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// One single-threaded generation, CellularModel.calculate over every line of a frame
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ModelBenchmark {
+    @Param({"illness", "neighbor", "lenia", "life", "illness.rule", "neighbor.rule"})
+    public String template;
+
+    @Param({"256", "1024"})
+    public int size;
+
+    @Param({"wall", "periodic"})
+    public String boundary;
+
+    private CellularModel model;
+    private int generation;
+
+    @Setup
+    public void setup() {
+        model = Templates.create(template, size, size, boundary).initialize(Initializer.noise, size, ModelExecutor.numproc);
+        generation = 0;
+    }
+
+    @Benchmark
+    public void calculate() {
+        generation = (generation + 1) & 1;
+        model.calculate(generation * model.height, model.height);
+    }
+}
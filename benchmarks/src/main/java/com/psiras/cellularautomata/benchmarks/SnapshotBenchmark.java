@@ -0,0 +1,58 @@
+package com.psiras.cellularautomata.benchmarks;
+
+import com.psiras.cellularautomata.model.FrameHandle;
+import com.psiras.cellularautomata.model.Initializer;
+import com.psiras.cellularautomata.model.ModelExecutor;
+import com.psiras.cellularautomata.template.Templates;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Cost of reading a frame on an idle executor: a pinned copy (byte copy or bit unpacking)
+// and pinning alone, which reads byte models in place
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class SnapshotBenchmark {
+    @Param({"illness", "life"})
+    public String template;
+
+    @Param({"256", "1024", "4096"})
+    public int size;
+
+    private ModelExecutor executor;
+    private byte[] buff;
+
+    @Setup
+    public void setup() {
+        executor = new ModelExecutor(1);
+        executor.setModel(Templates.create(template, size, size).initialize(Initializer.noise, size, ModelExecutor.numproc));
+        buff = new byte[size * size];
+    }
+
+    @Benchmark
+    public byte[] snapshot() {
+        return executor.snapshot(buff);
+    }
+
+    @Benchmark
+    public byte pin() {
+        try (FrameHandle frame = executor.pin()) {
+            return frame.cells()[frame.base() * size];
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.psiras.cellularautomata;
+
+import com.psiras.cellularautomata.model.CellularModel;
+import com.psiras.cellularautomata.model.Checkpoint;
+import com.psiras.cellularautomata.model.EnsembleExecutor;
+import com.psiras.cellularautomata.model.FrameHandle;
+import com.psiras.cellularautomata.model.ImageInitializer;
+import com.psiras.cellularautomata.model.Initializer;
+import com.psiras.cellularautomata.model.Metrics;
+import com.psiras.cellularautomata.model.ModelExecutor;
+import com.psiras.cellularautomata.model.PatternInitializer;
+import com.psiras.cellularautomata.model.Recorder;
+import com.psiras.cellularautomata.template.NeighborTemplate;
+import com.psiras.cellularautomata.template.Templates;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+// Headless runs, no display needed. Lists run every combination, e.g.:
+// java com.psiras.cellularautomata.Batch --template=illness,life --size=1024,512x2048 --threads=1,2,4 --generations=1000
+// The same seed gives the same evolution, --init takes noise, an .rle pattern, an image file
+// or a .ckpt checkpoint to continue from, --checkpoint saves the last generation of a run,
+// --record keeps every N-th generation (--every) in a recording, dropping what it can't keep up with,
+// --ensemble runs N models seeded seed, seed+1, ... on the same threads, --sweep runs them for
+// every alpha:beta:gamma of the neighbor template given, e.g. --sweep=3:2:1,2.5:2:1, --depth calculates
+// that many generations per tile pass of a single model, not of ensembles (see BandScheduler),
+// --boundary picks what lies beyond the model borders (see CellularModel)
+public class Batch {
+    private static final long poll = 50000; // ns between generation checks
+    private String[] templates = {"illness"};
+    private String[] sizes = {"1024"};
+    private int[] threads = {ModelExecutor.numproc};
+    private int[] depths = {1};
+    private int generations = 1000;
+    private int warmup = 100;
+    private long seed = System.nanoTime();
+    private String init = "noise";
+    private String checkpoint = null;
+    private String record = null;
+    private int every = 100;
+    private int ensemble = 1;
+    private float[][] sweep = null; // alpha, beta, gamma of the neighbor template
+    private String boundary = "wall";
+
+    public static void main(String[] args) {
+        final Batch batch = new Batch();
+        batch.parse(args);
+
+        for (String template : batch.templates) {
+            for (String size : batch.sizes) {
+                for (int numthreads : batch.threads) try {
+                    // ensembles run bands of every model row by row, depth is for single models
+                    if ((batch.ensemble > 1) || (batch.sweep != null)) batch.ensemble(template, size, numthreads);
+                    else for (int depth : batch.depths) batch.run(template, size, numthreads, depth);
+                } catch (IOException e) {
+                    usage("Can't read " + batch.init + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void parse(String[] args) {
+        for (String arg : args) {
+            final int split = arg.indexOf('=');
+            if (!arg.startsWith("--") || (split < 0)) usage("Unexpected argument: " + arg);
+            final String value = arg.substring(split + 1);
+
+            switch (arg.substring(2, split)) {
+                case "template": templates = value.split(","); break;
+                case "size": sizes = value.split(","); break;
+                case "threads": threads = numbers(value); break;
+                case "depth": depths = numbers(value); break;
+                case "generations": generations = Integer.parseInt(value); break;
+                case "warmup": warmup = Integer.parseInt(value); break;
+                case "seed": seed = Long.parseLong(value); break;
+                case "init": init = value; break;
+                case "checkpoint": checkpoint = value; break;
+                case "record": record = value; break;
+                case "every": every = Integer.parseInt(value); break;
+                case "ensemble": ensemble = Integer.parseInt(value); break;
+                case "sweep": sweep = rates(value); break;
+                case "boundary": boundary = value; break;
+                default: usage("Unknown option: " + arg);
+            }
+        }
+        if (generations < 1) usage("At least 1 generation required");
+        if ((sweep != null) && !Arrays.asList(templates).equals(Arrays.asList("neighbor"))) {
+            usage("--sweep takes the neighbor template only");
+        }
+    }
+
+    private static float[][] rates(String value) {
+        final String[] items = value.split(",");
+        final float[][] rates = new float[items.length][];
+        for (int i = 0; i < items.length; ++i) {
+            final String[] parts = items[i].split(":");
+            if (parts.length != 3) usage("Expected alpha:beta:gamma instead of " + items[i]);
+            rates[i] = new float[] {Float.parseFloat(parts[0]), Float.parseFloat(parts[1]), Float.parseFloat(parts[2])};
+        }
+        return rates;
+    }
+
+    private static int[] numbers(String value) {
+        final String[] items = value.split(",");
+        final int[] numbers = new int[items.length];
+        for (int i = 0; i < items.length; ++i) numbers[i] = Integer.parseInt(items[i]);
+        return numbers;
+    }
+
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("Options: --template=" + String.join(",", Templates.names)
+                + " --size=N|HxW --threads=N --depth=N --generations=N --warmup=N --seed=N --init=noise|FILE.rle|IMAGE|FILE.ckpt --checkpoint=FILE --record=FILE --every=N --ensemble=N --sweep=A:B:C"
+                + " --boundary=" + Templates.boundaries + " (lists are comma separated)");
+        System.exit(1);
+    }
+
+    private Initializer initializer(int height, int width) throws IOException {
+        if (init.equals("noise")) return Initializer.noise;
+        if (init.endsWith(".rle")) try (Reader reader = new FileReader(init)) {
+            return new PatternInitializer(reader, height, width);
+        }
+        return new ImageInitializer(new File(init), height, width);
+    }
+
+    private void run(String template, String size, int numthreads, int depth) throws IOException {
+        final int cross = size.indexOf('x');
+        final int height = Integer.parseInt(cross < 0 ? size : size.substring(0, cross));
+        final int width = Integer.parseInt(cross < 0 ? size : size.substring(cross + 1));
+        final long filling = System.nanoTime();
+        final CellularModel model = Templates.create(template, height, width, boundary);
+        long restored = 0;
+
+        if (init.endsWith(".ckpt")) {
+            restored = Checkpoint.restore(new File(init), template, model).generation;
+        } else {
+            model.initialize(initializer(height, width), seed, numthreads);
+        }
+        System.out.printf("%s %dx%d seed=%d init=%s boundary=%s: filled in %.3f s%n",
+                template, height, width, model.seed(), init, boundary, (System.nanoTime() - filling) / 1e9);
+        final ModelExecutor executor = new ModelExecutor(numthreads);
+        final long[] latency = new long[generations];
+        executor.setModel(model, restored, depth);
+        executor.start();
+        Management.register("Batch", executor);
+        final Recorder recorder = (record == null ? null
+                : new Recorder(executor, new File(record), every, 16, 8, Recorder.Overflow.DROP));
+        if (recorder != null) recorder.start();
+
+        while (executor.generation() < restored + warmup) LockSupport.parkNanos(poll);
+        final long first = executor.generation();
+        final long start = System.nanoTime();
+        long last = start;
+        long finished = 0;
+        int seen = 0;
+
+        // Generations finishing between two checks share the elapsed time evenly
+        while (seen < generations) {
+            final long done = executor.generation() - first;
+            if (done > seen) {
+                final long now = System.nanoTime();
+                final int count = (int)Math.min(done, generations);
+                Arrays.fill(latency, seen, count, (now - last) / (done - seen));
+                finished = done;
+                seen = count;
+                last = now;
+            } else {
+                LockSupport.parkNanos(poll);
+            }
+        }
+        if (recorder != null) {
+            recorder.close();
+            System.out.printf("  record %s: %d frames, %d dropped%n", record, recorder.recorded(), recorder.dropped());
+        }
+        if (checkpoint != null) try (Checkpoint file = new Checkpoint(new File(checkpoint));
+                FrameHandle frame = executor.pin()) {
+            file.save(template, frame);
+            System.out.printf("  checkpoint %s: generation %d%n", checkpoint, frame.generation);
+        }
+        executor.terminate();
+        report(template, height, width, numthreads, depth, finished, last - start, latency);
+        report(executor.metrics());
+    }
+
+    // Every model runs the given generations, the ensemble at once in a single pool
+    private void ensemble(String template, String size, int numthreads) throws IOException {
+        final int cross = size.indexOf('x');
+        final int height = Integer.parseInt(cross < 0 ? size : size.substring(0, cross));
+        final int width = Integer.parseInt(cross < 0 ? size : size.substring(cross + 1));
+        final Initializer initializer = initializer(height, width);
+        final EnsembleExecutor executor = new EnsembleExecutor(numthreads, EnsembleExecutor.Policy.FAIR);
+
+        final float[][] rates = (sweep == null ? new float[][] {null} : sweep);
+        for (float[] rate : rates) for (int i = 0; i < ensemble; ++i) {
+            final CellularModel model = (rate == null ? Templates.create(template, height, width, boundary)
+                    : Templates.bound(new NeighborTemplate(height, width, rate[0], rate[1], rate[2]), boundary));
+            executor.add(model.initialize(initializer, seed + i, numthreads), generations);
+        }
+        final int count = rates.length * ensemble;
+        final long start = System.nanoTime();
+        executor.start();
+        while (!executor.finished()) LockSupport.parkNanos(poll);
+        final long elapsed = System.nanoTime() - start;
+        executor.terminate();
+
+        final double seconds = elapsed / 1e9;
+        final double rate = (double)generations * count / seconds;
+        System.out.printf("%s %dx%d threads=%d ensemble=%d generations=%d: %.3f s, %.1f generations/s, %.3e cell-updates/s%n",
+                template, height, width, numthreads, count, generations, seconds, rate, rate * height * width);
+        for (EnsembleExecutor.Member member : executor.members()) {
+            final String swept = (sweep == null ? "" : String.format(" rates=%s:%s:%s", ((NeighborTemplate)member.model).alpha,
+                    ((NeighborTemplate)member.model).beta, ((NeighborTemplate)member.model).gamma));
+            System.out.printf("  seed=%d%s: generation %d, %d bands computed, %d skipped, busy %d ms%n", member.model.seed(), swept,
+                    member.generation(), member.bands(), member.skipped(), member.busy() / 1000000);
+        }
+    }
+
+    private static void report(String template, int height, int width, int numthreads, int depth, long finished, long elapsed, long[] latency) {
+        final double seconds = elapsed / 1e9;
+        final double rate = finished / seconds;
+        Arrays.sort(latency);
+
+        System.out.printf("%s %dx%d threads=%d depth=%d generations=%d: %.3f s, %.1f generations/s, %.3e cell-updates/s%n",
+                template, height, width, numthreads, depth, finished, seconds, rate, rate * height * width);
+        System.out.printf("  latency ms: p50 %.3f, p90 %.3f, p99 %.3f, max %.3f%n",
+                percentile(latency, 0.50), percentile(latency, 0.90), percentile(latency, 0.99),
+                latency[latency.length - 1] / 1e6);
+    }
+
+    private static void report(Metrics metrics) {
+        System.out.printf("  band compute us: p50 %d, p99 %d, max %d; %d computed, %d skipped; imbalance %.2f%n",
+                metrics.getComputeP50(), metrics.getComputeP99(), metrics.getComputeMax(),
+                metrics.getBandsComputed(), metrics.getBandsSkipped(), metrics.getImbalance());
+        System.out.printf("  worker ms: busy %s, wait %s, held %s, idle %s%n", Arrays.toString(metrics.getWorkerBusyMillis()),
+                Arrays.toString(metrics.getWorkerWaitMillis()), Arrays.toString(metrics.getWorkerHeldMillis()),
+                Arrays.toString(metrics.getWorkerIdleMillis()));
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        final int index = (int)Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+}
@@ -0,0 +1,203 @@
+package com.psiras.cellularautomata;
+
+import com.psiras.cellularautomata.model.CellularModel;
+import com.psiras.cellularautomata.model.ImageInitializer;
+import com.psiras.cellularautomata.model.Initializer;
+import com.psiras.cellularautomata.model.Link;
+import com.psiras.cellularautomata.model.ModelExecutor;
+import com.psiras.cellularautomata.model.PatternInitializer;
+import com.psiras.cellularautomata.model.Strip;
+import com.psiras.cellularautomata.template.Templates;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+// Runs one model as strips in separate processes exchanging halos over sockets, e.g.:
+// java com.psiras.cellularautomata.Cluster --template=life --size=4096 --processes=4 --generations=1000
+// launches the strips as local processes, standing in for a cluster; --verify runs the whole model
+// in this process as well and compares every strip with it. On a real cluster start one worker
+// per node, top to bottom: --worker=I --listen=PORT for all but the last, --upper=HOST:PORT for
+// all but the first, with the same other options
+public class Cluster {
+    private String template = "life";
+    private int height = 1024;
+    private int width = 1024;
+    private int processes = 2;
+    private int generations = 1000;
+    private long seed = System.nanoTime();
+    private String init = "noise";
+    private String boundary = "wall";
+    private boolean verify = false;
+    private int worker = -1;
+    private int listen = 0;
+    private String upper = null;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final Cluster cluster = new Cluster();
+        cluster.parse(args);
+        if (cluster.worker >= 0) cluster.work(); else cluster.launch();
+    }
+
+    private void parse(String[] args) {
+        for (String arg : args) {
+            final int split = arg.indexOf('=');
+            if (arg.equals("--verify")) {
+                verify = true;
+                continue;
+            }
+            if (!arg.startsWith("--") || (split < 0)) usage("Unexpected argument: " + arg);
+            final String value = arg.substring(split + 1);
+
+            switch (arg.substring(2, split)) {
+                case "template": template = value; break;
+                case "size": size(value); break;
+                case "processes": processes = Integer.parseInt(value); break;
+                case "generations": generations = Integer.parseInt(value); break;
+                case "seed": seed = Long.parseLong(value); break;
+                case "init": init = value; break;
+                case "boundary": boundary = value; break;
+                case "worker": worker = Integer.parseInt(value); break;
+                case "listen": listen = Integer.parseInt(value); break;
+                case "upper": upper = value; break;
+                default: usage("Unknown option: " + arg);
+            }
+        }
+        if (processes < 1) usage("At least 1 process required");
+    }
+
+    private void size(String value) {
+        final int cross = value.indexOf('x');
+        height = Integer.parseInt(cross < 0 ? value : value.substring(0, cross));
+        width = Integer.parseInt(cross < 0 ? value : value.substring(cross + 1));
+    }
+
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("Options: --template=" + String.join(",", Templates.names)
+                + " --size=N|HxW --processes=N --generations=N --seed=N --init=noise|FILE.rle|IMAGE --verify"
+                + " --boundary=" + Templates.boundaries.replace("|periodic", "")
+                + " [--worker=I --listen=PORT --upper=HOST:PORT]");
+        System.exit(1);
+    }
+
+    private Initializer initializer() throws IOException {
+        if (init.equals("noise")) return Initializer.noise;
+        if (init.endsWith(".rle")) try (Reader reader = new FileReader(init)) {
+            return new PatternInitializer(reader, height, width);
+        }
+        return new ImageInitializer(new File(init), height, width);
+    }
+
+    // Workers are started top to bottom, each one connecting to the port its upper one listens on
+    private void launch() throws IOException, InterruptedException {
+        final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        final List<Process> workers = new ArrayList<Process>();
+        final List<BufferedReader> outputs = new ArrayList<BufferedReader>();
+        String address = null;
+
+        for (int i = 0; i < processes; ++i) {
+            final List<String> command = new ArrayList<String>();
+            command.add(java);
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(Cluster.class.getName());
+            command.add("--template=" + template);
+            command.add("--size=" + height + "x" + width);
+            command.add("--processes=" + processes);
+            command.add("--generations=" + generations);
+            command.add("--seed=" + seed);
+            command.add("--init=" + init);
+            command.add("--boundary=" + boundary);
+            command.add("--worker=" + i);
+            if (address != null) command.add("--upper=" + address);
+
+            final Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            final BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            workers.add(process);
+            outputs.add(output);
+            if (i + 1 < processes) {
+                final String line = output.readLine();
+                if ((line == null) || !line.startsWith("listening ")) throw new IOException("Worker " + i + " didn't start");
+                address = "localhost:" + line.substring("listening ".length());
+            }
+        }
+
+        final long[] hashes = new long[processes];
+        for (int i = 0; i < processes; ++i) {
+            for (String line = outputs.get(i).readLine(); line != null; line = outputs.get(i).readLine()) {
+                System.out.println(line);
+                if (line.startsWith("strip ")) hashes[i] = Long.parseUnsignedLong(line.substring(line.lastIndexOf(' ') + 1), 16);
+            }
+            if (workers.get(i).waitFor() != 0) System.err.println("Worker " + i + " failed");
+        }
+        if (verify) verify(hashes);
+    }
+
+    private void work() throws IOException {
+        final int edge = Templates.edge(template);
+        final int first = Strip.first(height, edge, processes, worker);
+        final int rows = Strip.first(height, edge, processes, worker + 1) - first;
+        final CellularModel model = Templates.create(template, rows + 2 * edge, width, boundary)
+                .initialize(initializer(), seed, 1, first - edge);
+        final int block = Strip.block(model);
+        Link above = null;
+        Link below = null;
+
+        if (worker + 1 < processes) try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(listen));
+            System.out.println("listening " + server.socket().getLocalPort());
+            System.out.flush();
+            if (upper != null) above = connect(block);
+            below = Link.accept(server, block);
+        } else if (upper != null) {
+            above = connect(block);
+        }
+
+        final Strip strip = new Strip(model, first, above, below);
+        final long start = System.nanoTime();
+        while (strip.generation() < generations) strip.step();
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        if (above != null) above.close();
+        if (below != null) below.close();
+
+        System.out.printf("strip %d rows %d-%d: %d generations in %.3f s, %.1f generations/s, hash %016x%n",
+                worker, first, first + rows, generations, seconds, generations / seconds, strip.hash());
+    }
+
+    private Link connect(int block) throws IOException {
+        final int colon = upper.lastIndexOf(':');
+        return Link.connect(upper.substring(0, colon), Integer.parseInt(upper.substring(colon + 1)), block);
+    }
+
+    private void verify(long[] hashes) throws IOException {
+        final CellularModel model = Templates.create(template, height, width, boundary).initialize(initializer(), seed, ModelExecutor.numproc);
+        final ModelExecutor executor = new ModelExecutor(ModelExecutor.numproc);
+        executor.setModel(model);
+        executor.runTo(generations);
+        executor.start();
+        while (executor.generation() < generations) LockSupport.parkNanos(1000000);
+        executor.terminate();
+
+        final int edge = model.edge();
+        final int base = executor.baseline();
+        int failed = 0;
+        for (int i = 0; i < processes; ++i) {
+            final int first = Strip.first(height, edge, processes, i);
+            final int rows = Strip.first(height, edge, processes, i + 1) - first;
+            if (Strip.hash(model, base + first, rows) != hashes[i]) {
+                System.out.println("strip " + i + " differs from the whole model");
+                ++failed;
+            }
+        }
+        System.out.println(failed == 0 ? "verified: every strip matches the whole model" : failed + " strips differ");
+    }
+}
@@ -1,9 +1,14 @@
 package com.psiras.cellularautomata;
 
+import com.psiras.cellularautomata.model.AbstractExecutor;
 import com.psiras.cellularautomata.model.CellularModel;
+import com.psiras.cellularautomata.model.FrameHandle;
+import com.psiras.cellularautomata.model.Initializer;
 import com.psiras.cellularautomata.model.ModelExecutor;
 import com.psiras.cellularautomata.model.ThreadExecutor;
 import com.psiras.cellularautomata.template.IllnessTemplate;
+import com.psiras.cellularautomata.template.LeniaTemplate;
+import com.psiras.cellularautomata.template.LifeTemplate;
 import com.psiras.cellularautomata.template.NeighborTemplate;
 import com.psiras.cellularautomata.utils.Bitwise;
 
@@ -46,8 +51,9 @@ public class Main {
     // Canvas control
     private static class DrawView extends Canvas implements Runnable {
         private static final int scale = 2;
+        private static final int interval = 15; // ms between frames
         private static final Stroke pencil = new BasicStroke(scale);
-        private final ThreadExecutor painter = new ThreadExecutor(this, 1);
+        private final ThreadExecutor painter = new ThreadExecutor(this, 1, AbstractExecutor.virtual());
         private final ModelExecutor executor = new ModelExecutor(1.0f, 1);
         private boolean pressed = false;
         private int touchX = -1;
@@ -64,8 +70,12 @@ public class Main {
             final Dimension dim = getSize();
             final int square = Bitwise.rndpow2(Math.min(dim.height, dim.width) / scale) >>> 1;
             //executor.setModel(new IllnessTemplate(square, square));
-            executor.setModel(new NeighborTemplate(square, square));
+            //executor.setModel(new LeniaTemplate(square, square));
+            //executor.setModel(new LifeTemplate(square, square));
+            executor.setModel(new NeighborTemplate(square, square).initialize(Initializer.noise, System.nanoTime(), ModelExecutor.numproc));
+            executor.setRate(1000.0 / interval); // no generations nobody sees
             executor.start();
+            Management.register("Main", executor);
             painter.start();
         }
 
@@ -113,13 +123,16 @@ public class Main {
 
             while (painter.isActive()) {
                 try {
-                    Thread.sleep(15);
+                    Thread.sleep(interval);
                 } catch (InterruptedException e) {
                     break;
                 }
-                final byte[] snapshot = executor.snapshot();
-                final CellularModel model = executor.getModel();
-                paint_snapshot(canvas, snapshot, model.height, model.width, 0);
+                final long start = System.nanoTime();
+                try (FrameHandle frame = executor.pin()) {
+                    final CellularModel model = frame.model;
+                    paint_snapshot(canvas, frame.cells(), model.height, model.width, frame.base());
+                }
+                executor.metrics().render.record(System.nanoTime() - start);
                 //paint(canvas);
             }
         }
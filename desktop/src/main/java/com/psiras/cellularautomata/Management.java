@@ -0,0 +1,28 @@
+package com.psiras.cellularautomata;
+
+import com.psiras.cellularautomata.model.ModelExecutor;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Publishes executor metrics over JMX (desktop only, Android has no platform MBean server),
+// e.g. to watch them in JConsole under com.psiras.cellularautomata
+public class Management {
+    // Do not instantiate
+    private Management() {
+    }
+
+    public static void register(String name, ModelExecutor executor) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName object = new ObjectName("com.psiras.cellularautomata:type=Metrics,name=" + ObjectName.quote(name));
+            if (server.isRegistered(object)) server.unregisterMBean(object);
+            server.registerMBean(executor.metrics(), object);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -1,40 +1,183 @@
 package com.psiras.cellularautomata.model;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Runs numthreads copies of run(), on fresh dedicated threads by default or on any Executor:
+// workStealing() shared by several executors, or virtual() threads for I/O bound loops like
+// painters. Loops call proceed() between steps, which parks them while paused and lets them leave
+// once terminated. terminate() returns when every copy that began has left, copies a busy pool
+// never got to don't run at all. After that start() runs them anew
 public abstract class AbstractExecutor implements Runnable {
     public static final int numproc = Runtime.getRuntime().availableProcessors();
-    private final Thread[] threadpool;
+    private static final int spins = 64; // rounds of idle() yielding before parking
+    private static final long nap = 1000000; // ns, longest park of idle()
+    private final int numthreads;
+    private final Executor pool;
+    private final Object lock = new Object();
+    private Run run = new Run(); // of the last start()
     protected volatile boolean active = false;
+    private volatile boolean paused = false;
+    private volatile int signals = 0; // wake() calls so far
 
-    public AbstractExecutor(int numthreads) {
-        this.threadpool = new Thread[Math.max(numthreads, 1)];
+    // Copies of one start(), counted under the lock
+    private static class Run {
+        int running = 0;
+        boolean over = true; // terminated, copies beginning now leave at once
+    }
 
-        for (int i = 0; i < threadpool.length; ++i) {
-            threadpool[i] = new Thread(this);
-            threadpool[i].setPriority(Thread.MAX_PRIORITY);
-            threadpool[i].setDaemon(true);
-        }
+    public AbstractExecutor(int numthreads) {
+        this(numthreads, null);
     }
 
     public AbstractExecutor(float power, int reserved) {
         this((int)(power * numproc) - Math.max(reserved, 0));
     }
 
-    public void start() {
-        if (!active) {
+    // A null pool starts dedicated threads
+    public AbstractExecutor(int numthreads, Executor pool) {
+        this.numthreads = Math.max(numthreads, 1);
+        this.pool = pool;
+    }
+
+    // Pool of numthreads work-stealing threads, loops of several executors may share it
+    public static Executor workStealing(int numthreads) {
+        return new ForkJoinPool(Math.max(numthreads, 1));
+    }
+
+    // A virtual thread per loop from JDK 21 on, found reflectively as the core builds for Java 8.
+    // Null elsewhere, which means dedicated threads
+    public static Executor virtual() {
+        try {
+            return (Executor)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    public synchronized void start() {
+        if (active) return;
+        final Run run = new Run();
+        run.over = false;
+        final Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (lock) {
+                    if (run.over) return;
+                    ++run.running;
+                }
+                try {
+                    AbstractExecutor.this.run();
+                } finally {
+                    synchronized (lock) {
+                        --run.running;
+                        lock.notifyAll();
+                    }
+                }
+            }
+        };
+        synchronized (lock) {
+            this.run = run;
+            this.paused = false;
             this.active = true;
-            for (Thread thread : threadpool) thread.start();
+        }
+
+        for (int i = 0; i < numthreads; ++i) {
+            if (pool != null) {
+                pool.execute(worker);
+            } else {
+                final Thread thread = new Thread(worker);
+                thread.setPriority(Thread.MAX_PRIORITY);
+                thread.setDaemon(true);
+                thread.start();
+            }
         }
     }
 
-    public void terminate() {
-        if (active) try {
+    public synchronized void terminate() {
+        if (!active) return;
+        synchronized (lock) {
             this.active = false;
-            for (Thread thread : threadpool) thread.join();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            run.over = true;
+            lock.notifyAll();
+            try {
+                while (run.running > 0) lock.wait();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Loops park at their next proceed()
+    public void pause() {
+        this.paused = true;
+    }
+
+    public void resume() {
+        synchronized (lock) {
+            this.paused = false;
+            ++signals;
+            lock.notifyAll();
         }
     }
 
+    public boolean isPaused() {
+        return paused;
+    }
+
+    // Between steps of a loop: parks while paused, false once terminated
+    protected boolean proceed() {
+        if (paused) synchronized (lock) {
+            while (paused && active) try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+        return active;
+    }
+
+    // Taken before checking for work, then passed to rest()
+    protected int signals() {
+        return signals;
+    }
+
+    // Rests a loop until wake(), resume() or terminate(), or for at most nanos when positive.
+    // Returns at once if woken since signals() was taken, so no wake-up is lost
+    protected void rest(int seen, long nanos) {
+        synchronized (lock) {
+            if (!active || (signals != seen)) return;
+            try {
+                if (nanos > 0) TimeUnit.NANOSECONDS.timedWait(lock, nanos); else lock.wait();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    protected void wake() {
+        synchronized (lock) {
+            ++signals;
+            lock.notifyAll();
+        }
+    }
+
+    // Waiting on other workers: yields for a few rounds, then parks for growing spans
+    protected static void idle(int round) {
+        if (round < spins) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(Math.min(1000L << Math.min(round - spins, 10), nap));
+        }
+    }
+
+    public int threads() {
+        return numthreads;
+    }
+
     public boolean isActive() {
         return active;
     }
@@ -0,0 +1,328 @@
+package com.psiras.cellularautomata.model;
+
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Splits every generation into bands of rows. Tickets are issued in order (generation, band),
+// and band b of generation g starts only when bands b-1, b, b+1 of generation g-1 are done.
+// A band is never thinner than edge, so it reads nothing beyond its immediate neighbours, nor
+// than 2 * edge + 1 unless walled in, so it holds the lines its own halo lines are taken from.
+// Models wrapping around have the first and the last band neighbours too, see CellularModel.halo().
+// Once a band and its neighbours stop changing, the band is carried forward uncalculated.
+// Pinned generations are held still: no band starts a generation that reuses their frames.
+// With a depth above 1 tickets go out in tile passes instead, columns of a skewed wavefront:
+// band c of generation g + 1, band c - 1 of g + 2, ... down to g + depth, then column c + 1.
+// Bands are cut to fit a cache budget, so a pass keeps calculating the same few bands while
+// they are still cached, instead of streaming the whole frame once per generation. The same
+// readiness rules keep any such order safe. Passes never run into pinned frames, and pins
+// wait for the pass in flight to end, see drain(). Wrapping models are calculated row by row,
+// the first band of a generation waits on the last one of the previous generation
+public class BandScheduler {
+    private static final int budget = 1 << 20; // bytes of state a tile pass should keep cached
+    private static final int thinnest = 8; // lines of a band in passes, below that tickets cost more
+    private final AtomicLong ticket;
+    private final AtomicLongArray done;
+    private final AtomicLongArray changed; // latest generation differing from the one before
+    private final AtomicLongArray started; // latest generation a band writes or has written
+    private final TreeMap<Long, Integer> pins = new TreeMap<Long, Integer>();
+    private volatile long limit = Long.MAX_VALUE; // first generation overwriting a pinned frame
+    private volatile Listener listener = null;
+    private final AtomicLong skipped = new AtomicLong(0);
+    private volatile int touched = 0;
+    private volatile long quiet = 0; // nothing is carried up to this generation
+    private final CellularModel model;
+    public final int bands;
+    public final int rows;
+    public final int depth; // generations per tile pass
+    private final boolean wraps;
+    private long base; // generations before the current pass
+    private int span = 0; // generations of the current pass
+    private int column = Integer.MAX_VALUE; // next column of the current pass, none begun yet
+    private final AtomicInteger draining = new AtomicInteger(0); // pins waiting for the pass to end
+
+    // Told of every band as soon as it is calculated or carried, on the worker that did it, before
+    // the band counts as done: bands of later generations can't overwrite it until the call returns
+    public interface Listener {
+        void published(long generation, int line, int count);
+    }
+
+    public BandScheduler(CellularModel model, int numthreads) {
+        this(model, numthreads, 0);
+    }
+
+    // Continues from a generation already in the model, e.g. a restored checkpoint
+    public BandScheduler(CellularModel model, int numthreads, long generation) {
+        this(model, numthreads, generation, 1);
+    }
+
+    public BandScheduler(CellularModel model, int numthreads, long generation, int depth) {
+        final int split = Math.max(Math.max(numthreads, 1) << 2, 16); // a few bands per thread
+        final int cached = Math.max(budget / ((depth + 2) * model.frames * Math.max(model.lineBytes(), 1)), thinnest);
+        final int thin = (model.boundary() == CellularModel.Boundary.WALL ? Math.max(model.edge, 1) : 2 * model.edge + 1);
+        this.model = model;
+        this.wraps = model.wraps();
+        this.depth = (wraps ? 1 : Math.max(depth, 1));
+        this.rows = Math.max(Math.min((model.height + split - 1) / split, this.depth > 1 ? cached : Integer.MAX_VALUE), thin);
+        final int count = (model.height + rows - 1) / rows;
+        this.bands = ((count > 1) && (model.height - (count - 1) * rows < thin) ? count - 1 : count); // the last takes the rest
+        this.base = generation;
+        this.done = new AtomicLongArray(bands);
+        this.changed = new AtomicLongArray(bands);
+        this.started = new AtomicLongArray(bands);
+        this.ticket = new AtomicLong(generation * bands);
+
+        for (int b = 0; b < bands; ++b) {
+            done.set(b, generation);
+            changed.set(b, generation);
+            started.set(b, generation);
+        }
+    }
+
+    public CellularModel getModel() {
+        return model;
+    }
+
+    public long claim() {
+        return ticket.getAndIncrement();
+    }
+
+    // Tickets of the next column into tickets, at most depth of them, and their number. None if
+    // the column belongs to generations after last. A pass already begun is finished though
+    public int claim(long last, long[] tickets) {
+        if (depth == 1) {
+            final long ticket = claim(last);
+            tickets[0] = ticket;
+            return (ticket < 0 ? 0 : 1);
+        }
+
+        synchronized (this) {
+            if (column >= bands + span - 1) {
+                if (draining.get() > 0) return 0;
+                final long room = Math.min(last, limit - 1) - (base + span);
+                if (room <= 0) return 0;
+                base += span;
+                span = (int)Math.min(depth, room);
+                column = 0;
+            }
+
+            int count = 0;
+            for (int s = 0; s < span; ++s) {
+                final int band = column - s;
+                if ((band >= 0) && (band < bands)) tickets[count++] = (base + s) * bands + band;
+            }
+            ++column;
+            return count;
+        }
+    }
+
+    // Next ticket, or -1 if it belongs to a generation after last
+    public long claim(long last) {
+        while (true) {
+            final long next = ticket.get();
+            if (generation(next) > last) return -1;
+            if (ticket.compareAndSet(next, next + 1)) return next;
+        }
+    }
+
+    // Next ticket if it could be calculated right away, -1 if it couldn't or belongs to a
+    // generation after last. Row by row order only
+    public long claimReady(long last) {
+        while (true) {
+            final long next = ticket.get();
+            if ((generation(next) > last) || !ready(next)) return -1;
+            if (ticket.compareAndSet(next, next + 1)) return next;
+        }
+    }
+
+    // Whether the next ticket could be calculated right away, row by row order only
+    public boolean ready() {
+        return ready(ticket.get());
+    }
+
+    // Generation the next claimed ticket belongs to, the first one of the next column in passes
+    public long next() {
+        if (depth == 1) return generation(ticket.get());
+        synchronized (this) {
+            return base + (column >= bands + span - 1 ? span : 0) + 1;
+        }
+    }
+
+    // Whether pins hold the next generation back, its bands couldn't be acquired until unpinned
+    public boolean held() {
+        return next() >= limit;
+    }
+
+    public long generation(long ticket) {
+        return ticket / bands + 1;
+    }
+
+    public int band(long ticket) {
+        return (int)(ticket % bands);
+    }
+
+    public boolean ready(long ticket) {
+        final long previous = generation(ticket) - 1;
+        final int band = band(ticket);
+
+        for (int d = -1; d <= 1; ++d) {
+            final int b = neighbour(band, d);
+            if ((b >= 0) && (done.get(b) < previous)) return false;
+        }
+        return true;
+    }
+
+    // Band d away from the given one, -1 past the first or last unless wrapping
+    private int neighbour(int band, int d) {
+        final int b = band + d;
+        if (wraps) return (b + bands) % bands;
+        return ((b >= 0) && (b < bands) ? b : -1);
+    }
+
+    // Ready and announced to pin(), the other side of it: either pin() sees the band
+    // started or the band sees the new limit and backs off
+    public boolean acquire(long ticket) {
+        if (!ready(ticket)) return false;
+        final long generation = generation(ticket);
+        final int band = band(ticket);
+
+        started.set(band, generation);
+        if (generation < limit) return true;
+        started.set(band, generation - 1);
+        return false;
+    }
+
+    // Bands of a pass are generations apart, so the frame to pin may not exist before the pass
+    // ends, nor could a pass go on past a pin. Pins drain() it first and undrain() once pinned,
+    // no pass begins in between. Nothing to wait for row by row
+    public void drain() {
+        draining.incrementAndGet();
+    }
+
+    public void undrain() {
+        draining.decrementAndGet();
+    }
+
+    public synchronized boolean drained() {
+        return (depth == 1) || ((column >= bands + span - 1) && (generation() >= base + span));
+    }
+
+    // Latest generation whose frame no band has started to overwrite, held until unpin().
+    // Some bands may still be short of it, see generation()
+    public synchronized long pin() {
+        long pinned = generation();
+
+        while (true) {
+            limit = Math.min(pinned, pins.isEmpty() ? pinned : pins.firstKey()) + model.frames;
+            final long high = started();
+            if (high < pinned + model.frames) break;
+            pinned = high - model.frames + 1;
+        }
+        hold(pinned);
+        return pinned;
+    }
+
+    // Holds a given generation, possibly one still to come. False if its frame is reused already
+    public synchronized boolean pin(long generation) {
+        final long previous = limit;
+        limit = Math.min(previous, generation + model.frames);
+
+        if (started() >= generation + model.frames) {
+            limit = previous;
+            return false;
+        }
+        hold(generation);
+        return true;
+    }
+
+    private void hold(long pinned) {
+        final Integer count = pins.get(pinned);
+        pins.put(pinned, count == null ? 1 : count + 1);
+    }
+
+    long started() {
+        long high = 0;
+        for (int b = 0; b < bands; ++b) {
+            high = Math.max(high, started.get(b));
+        }
+        return high;
+    }
+
+    public synchronized void unpin(long pinned) {
+        final Integer count = pins.remove(pinned);
+        if ((count != null) && (count > 1)) pins.put(pinned, count - 1);
+        limit = (pins.isEmpty() ? Long.MAX_VALUE : pins.firstKey() + model.frames);
+    }
+
+    public void compute(long ticket) {
+        final long generation = generation(ticket);
+        final int band = band(ticket);
+        final int first = band * rows;
+        final int line = frame(generation) * model.height + first;
+        final int count = (band == bands - 1 ? model.height - first : rows);
+
+        if (model.touched() != touched) {
+            touched = model.touched();
+            quiet = generation + 2;
+        }
+
+        if ((generation > quiet) && settled(band, generation)) {
+            model.carry(line, count);
+            skipped.incrementAndGet();
+        } else {
+            model.calculate(line, count);
+            if (!model.settled(line, count)) changed.set(band, generation);
+        }
+        final Listener listener = this.listener;
+        if (listener != null) listener.published(generation, line, count);
+        done.set(band, generation);
+    }
+
+    // Null to stop. The first generation whose bands all reach the listener, none has started yet
+    public long listen(Listener listener) {
+        this.listener = listener;
+        return started() + 1;
+    }
+
+    // Lines [first, first + count) of the frame of generation may differ from those of since, an
+    // earlier one. Holds while the frame is pinned, and as long as the model isn't touched. Halo
+    // lines of wrapping models are taken from the band across
+    public boolean changed(long since, long generation, int first, int count) {
+        if (since > generation) return true;
+        final int from = Math.min(first / rows, bands - 1);
+        final int to = Math.min((first + count - 1) / rows, bands - 1);
+        for (int b = from; b <= to; ++b) {
+            if (changed.get(b) > since) return true;
+        }
+        if (wraps && (first < model.edge) && (changed.get(bands - 1) > since)) return true;
+        return wraps && (first + count > model.height - model.edge) && (changed.get(0) > since);
+    }
+
+    // Inputs of the band are the same as one generation ago
+    private boolean settled(int band, long generation) {
+        for (int d = -1; d <= 1; ++d) {
+            final int b = neighbour(band, d);
+            if ((b >= 0) && (changed.get(b) >= generation - 1)) return false;
+        }
+        return true;
+    }
+
+    // Bands carried forward so far
+    public long skipped() {
+        return skipped.get();
+    }
+
+    // Latest generation finished by every band
+    public long generation() {
+        long generation = Long.MAX_VALUE;
+        for (int b = 0; b < bands; ++b) {
+            generation = Math.min(generation, done.get(b));
+        }
+        return generation;
+    }
+
+    public int frame(long generation) {
+        return (int)(generation % model.frames);
+    }
+}
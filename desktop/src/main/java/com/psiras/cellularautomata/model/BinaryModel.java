@@ -0,0 +1,224 @@
+package com.psiras.cellularautomata.model;
+
+import com.psiras.cellularautomata.utils.SplitMix;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Two-state Moore rules packed 64 cells to a long. Neighbours of a whole word are counted
+// at once with bit-sliced adders, then matched against the born/survive counts (bit n of
+// the mask stands for n alive neighbours). Wall cells are dead, any positive state is alive
+public class BinaryModel extends CellularModel {
+    private static final int edge = 1;
+    protected final long[] bits;
+    protected final int words;
+    private final long[] interior;
+    public final int born;
+    public final int survive;
+
+    public BinaryModel(int height, int width, int born, int survive) {
+        super(height, width, edge, history, new byte[0]);
+        this.words = (width + 63) >>> 6;
+        this.bits = new long[vertical * words];
+        this.interior = new long[words];
+        this.born = born;
+        this.survive = survive;
+
+        for (int w = edge; w < width - edge; ++w) {
+            interior[w >>> 6] |= (1L << w);
+        }
+    }
+
+    // Alive from one half up. Wall lines draw their values too, so a Strip of the model draws
+    // the same values for its lines as the whole model does
+    @Override
+    protected void initialize(int h, Initializer init, SplitMix random) {
+        final int row = h * words;
+        final boolean body = ((h >= edge) && (h < height - edge));
+        Arrays.fill(bits, row, row + words, 0L);
+
+        for (int w = 0; w < width; ++w) {
+            if ((init.value(h, w, random) >= 0.5f) && body) bits[row + (w >>> 6)] |= (1L << w);
+        }
+        for (int k = 0; k < words; ++k) {
+            bits[row + k] &= interior[k];
+        }
+    }
+
+    public boolean alive(int line, int w) {
+        return ((bits[line * words + (w >>> 6)] >>> w) & 1L) != 0;
+    }
+
+    @Override
+    protected byte get(int pos) {
+        final int line = pos / width;
+        final int w = pos % width;
+        if (((interior[w >>> 6] >>> w) & 1L) == 0) return wall;
+        final int h = line % height;
+        if ((h < edge) || (h >= height - edge)) return wall;
+        int neighbours = 0;
+
+        for (int dh = -edge; dh <= edge; ++dh) {
+            for (int dw = -edge; dw <= edge; ++dw) {
+                if (((dh != 0) || (dw != 0)) && alive(line + dh, w + dw)) ++neighbours;
+            }
+        }
+        final int rule = (alive(line, w) ? survive : born);
+        return (byte)((rule >>> neighbours) & 1);
+    }
+
+    @Override
+    public void calculate(int line) {
+        if (!body(line)) {
+            halo(line);
+            return;
+        }
+
+        final int dst = line * words;
+        final int src = frame(line, -1) * words;
+        final int up = src - words;
+        final int down = src + words;
+        final int last = words - 1;
+
+        for (int k = 0; k < words; ++k) {
+            final long u = bits[up + k];
+            final long m = bits[src + k];
+            final long d = bits[down + k];
+            // bit i of *l holds the cell to the left of i, of *r the cell to the right
+            final long ul = (u << 1) | (k > 0 ? bits[up + k - 1] >>> 63 : 0);
+            final long ur = (u >>> 1) | (k < last ? bits[up + k + 1] << 63 : 0);
+            final long ml = (m << 1) | (k > 0 ? bits[src + k - 1] >>> 63 : 0);
+            final long mr = (m >>> 1) | (k < last ? bits[src + k + 1] << 63 : 0);
+            final long dl = (d << 1) | (k > 0 ? bits[down + k - 1] >>> 63 : 0);
+            final long dr = (d >>> 1) | (k < last ? bits[down + k + 1] << 63 : 0);
+
+            // rows above and below sum up to 3, the middle row up to 2
+            final long a0 = ul ^ u ^ ur;
+            final long a1 = (ul & u) | (ur & (ul ^ u));
+            final long b0 = ml ^ mr;
+            final long b1 = ml & mr;
+            final long c0 = dl ^ d ^ dr;
+            final long c1 = (dl & d) | (dr & (dl ^ d));
+
+            // total up to 8 as four bit planes
+            final long s0 = a0 ^ b0 ^ c0;
+            final long k0 = (a0 & b0) | (c0 & (a0 ^ b0));
+            final long t0 = a1 ^ b1 ^ c1;
+            final long t1 = (a1 & b1) | (c1 & (a1 ^ b1));
+            final long s1 = t0 ^ k0;
+            final long k1 = t0 & k0;
+            final long s2 = t1 ^ k1;
+            final long s3 = t1 & k1;
+
+            long births = 0;
+            long survivals = 0;
+            for (int n = 0; n <= 8; ++n) {
+                if ((((born | survive) >>> n) & 1) == 0) continue;
+                final long count = ((n & 1) != 0 ? s0 : ~s0) & ((n & 2) != 0 ? s1 : ~s1)
+                        & ((n & 4) != 0 ? s2 : ~s2) & ((n & 8) != 0 ? s3 : ~s3);
+                if (((born >>> n) & 1) != 0) births |= count;
+                if (((survive >>> n) & 1) != 0) survivals |= count;
+            }
+            bits[dst + k] = ((m & survivals) | (~m & births)) & interior[k];
+        }
+        border(line);
+    }
+
+    @Override
+    protected void move(int line, int from, int to) {
+        put(line, to, (byte)(alive(line, from) ? 1 : 0));
+    }
+
+    @Override
+    protected void put(int line, int w, byte state) {
+        final int index = line * words + (w >>> 6);
+        if (state > 0) bits[index] |= (1L << w); else bits[index] &= ~(1L << w);
+    }
+
+    @Override
+    protected void copy(int from, int to, int count) {
+        System.arraycopy(bits, from * words, bits, to * words, count * words);
+    }
+
+    @Override
+    protected void fill(int line, byte state) {
+        Arrays.fill(bits, line * words, (line + 1) * words, 0L);
+        if (state > 0) for (int w = 0; w < width; ++w) put(line, w, state);
+    }
+
+    @Override
+    public int lineBytes() {
+        return words << 3;
+    }
+
+    @Override
+    public void save(int line, ByteBuffer out) {
+        out.asLongBuffer().put(bits, line * words, words);
+        out.position(out.position() + (words << 3));
+    }
+
+    @Override
+    public void load(int line, ByteBuffer in) {
+        in.asLongBuffer().get(bits, line * words, words);
+        in.position(in.position() + (words << 3));
+    }
+
+    @Override
+    public boolean settled(int line, int count) {
+        final int src = frame(line, -1) * words;
+        final int dst = line * words;
+
+        for (int i = 0; i < count * words; ++i) {
+            if (bits[dst + i] != bits[src + i]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void snapshot(int base, byte[] buff) {
+        for (int h = 0; h < height; ++h) snapshotLine(base + h, buff, h * width);
+    }
+
+    @Override
+    public void snapshotLine(int line, byte[] buff, int offset) {
+        final boolean walls = (boundary == Boundary.WALL); // other halos show their states
+        final int h = line % height;
+        final boolean body = ((h >= edge) && (h < height - edge)) || !walls;
+
+        for (int w = 0; w < width; ++w) {
+            if (body && (!walls || (((interior[w >>> 6] >>> w) & 1L) != 0))) {
+                buff[offset + w] = (byte)(alive(line, w) ? 1 : 0);
+            } else {
+                buff[offset + w] = wall;
+            }
+        }
+    }
+
+    @Override
+    public void erase(int y0, int x0, int y1, int x1, int radius) {
+        final float dy = (y1 - y0);
+        final float dx = (x1 - x0);
+
+        if ((y0 < height) && (y1 < height) && (x0 < width) && (x1 < width)) {
+            ++touched;
+            for (int h = Math.max(y0 - radius, 0); h < Math.min(y0 + 1 + radius, height); ++h) {
+                final int src = frame(h, -1) * words;
+                final int dst = h * words;
+                final float py = (h - y0);
+
+                for (int w = Math.max(x0 - radius, 0); w < Math.min(x0 + 1 + radius, width); ++w) {
+                    final float px = (w - x0);
+                    float c = (px * dx + py * dy);
+                    c = (c > 1 ? 1 : 0);
+
+                    final float ddy = c * dy - py;
+                    final float ddx = c * dx - px;
+                    if (Math.sqrt(ddy * ddy + ddx * ddx) < radius) {
+                        bits[dst + (w >>> 6)] &= ~(1L << w);
+                        bits[src + (w >>> 6)] &= ~(1L << w);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -1,50 +1,323 @@
 package com.psiras.cellularautomata.model;
 
+import com.psiras.cellularautomata.utils.SplitMix;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// States of a frame, height lines of width cells. The outer edge lines and columns are the
+// halo, refreshed after the interior every generation as the boundary mode says, so rules read
+// any neighbourhood of an interior cell without checking where it lies:
+// WALL fills the halo with the wall state, FIXED with a given state, OPEN repeats the outermost
+// interior cells, REFLECTIVE mirrors the interior about them, PERIODIC wraps it around
 public abstract class CellularModel {
     protected static final byte wall = -1;
-    protected static final byte fr2n = 3;
+    protected static final int history = 2; // current and previous generation
+    public static final int tile = 64; // rows per random stream when initializing
+    static final long largest = Integer.MAX_VALUE - 8; // cells of the largest array VMs allocate
     protected final int edge;
+    protected final int frames;
     protected final int vertical;
     public final byte[] memory;
     public final int height;
     public final int width;
+    protected volatile int touched = 0; // bumped by erase(), nothing may be carried over then
+    protected long seed = 0; // the state was initialized from
+    protected Boundary boundary = Boundary.WALL;
+    protected byte outside = wall; // state of the halo, WALL and FIXED only
+
+    public enum Boundary {
+        WALL, FIXED, OPEN, REFLECTIVE, PERIODIC
+    }
 
     protected CellularModel(int height, int width, int edge) {
+        this(height, width, edge, history);
+    }
+
+    // Deeper history keeps older generations around, e.g. for snapshot smoothing
+    protected CellularModel(int height, int width, int edge, int frames) {
+        this(height, width, edge, frames, new byte[frames * height * width]);
+    }
+
+    // Models keeping their state elsewhere pass an empty memory and override snapshot()
+    protected CellularModel(int height, int width, int edge, int frames, byte[] memory) {
+        if (frames < 2) throw new IllegalArgumentException("At least 2 frames required");
         this.edge = edge;
-        this.vertical = (height << fr2n);
-        this.memory = new byte[vertical * width];
+        this.frames = frames;
+        this.vertical = frames * height;
+        this.memory = memory;
         this.height = height;
         this.width = width;
+    }
+
+    // Asked for interior cells only, which never hold the wall state
+    protected abstract byte get(int pos);
+
+    public CellularModel setBoundary(Boundary boundary) {
+        return setBoundary(boundary, (byte)0);
+    }
 
-        for (int i = 0; i < vertical * width; ++i) {
-            memory[i] = (byte)(Math.random() * 127);
+    // Before initializing and scheduling the model. FIXED halos hold the given state
+    public CellularModel setBoundary(Boundary boundary, byte state) {
+        if ((boundary != Boundary.WALL) && (Math.min(height, width) < 3 * edge + 1)) {
+            throw new IllegalArgumentException("Model thinner than its boundary");
         }
+        this.boundary = boundary;
+        this.outside = (boundary == Boundary.WALL ? wall : state);
+        return this;
     }
 
-    protected abstract byte get(int pos);
+    public Boundary boundary() {
+        return boundary;
+    }
+
+    // Whether the halo of the first lines is taken from the last ones and vice versa
+    public boolean wraps() {
+        return boundary == Boundary.PERIODIC;
+    }
+
+    // Fills the first frame tile by tile. Every tile draws from its own stream forked from
+    // the seed, so the state doesn't depend on the number of threads
+    public CellularModel initialize(final Initializer init, final long seed, int numthreads) {
+        return initialize(init, seed, numthreads, 0);
+    }
+
+    // Fills the first frame with lines [offset, offset + height) of a taller model initialized
+    // alike, e.g. a Strip. Lines of a tile above the offset are drawn into line 0 to advance
+    // the tile's stream, then overwritten
+    public CellularModel initialize(final Initializer init, final long seed, int numthreads, final int offset) {
+        this.seed = seed;
+        final int first = offset / tile;
+        final AtomicInteger next = new AtomicInteger(first);
+        final int tiles = (offset + height + tile - 1) / tile;
+        final Runnable filler = new Runnable() {
+            @Override
+            public void run() {
+                for (int t = next.getAndIncrement(); t < tiles; t = next.getAndIncrement()) {
+                    final SplitMix random = SplitMix.fork(seed, t);
+                    for (int r = t * tile; r < Math.min((t + 1) * tile, offset + height); ++r) {
+                        final int h = Math.max(r - offset, 0);
+                        initialize(h, shift(init, r - h), random);
+                    }
+                }
+            }
+        };
+
+        final Thread[] helpers = new Thread[Math.max(Math.min(numthreads, tiles - first), 1) - 1];
+        for (int i = 0; i < helpers.length; ++i) {
+            helpers[i] = new Thread(filler);
+            helpers[i].start();
+        }
+        filler.run();
+
+        for (Thread helper : helpers) try {
+            helper.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+
+        // Walls appear with the first generation, as they always have
+        if (boundary != Boundary.WALL) {
+            for (int h = edge; h < height - edge; ++h) border(h);
+            halo(0, height);
+        }
+        return this;
+    }
+
+    private static Initializer shift(final Initializer init, final int rows) {
+        if (rows == 0) return init;
+        return (h, w, random) -> init.value(h + rows, w, random);
+    }
+
+    // Initial state of line h of the first frame, states scaled to [0, 127]
+    protected void initialize(int h, Initializer init, SplitMix random) {
+        final int row = h * width;
+        for (int w = 0; w < width; ++w) {
+            memory[row + w] = (byte)(init.value(h, w, random) * Byte.MAX_VALUE);
+        }
+    }
 
     protected int pos_set(int pos) {
         return (pos + height * width) % memory.length;
     }
 
+    protected boolean body(int line) {
+        final int h = line % height;
+        return (h >= edge) && (h < height - edge);
+    }
+
     public void calculate(int line) {
+        if (!body(line)) {
+            halo(line);
+            return;
+        }
+        computeRow(frame(line, -1) * width, line * width, edge, width - edge);
+        border(line);
+    }
+
+    // Interior cells [from, to) of a line, src and dst point at the line starts in memory
+    protected void computeRow(int src, int dst, int from, int to) {
+        for (int w = from; w < to; ++w) {
+            memory[dst + w] = get(src + w);
+        }
+    }
+
+    // Consecutive lines of one frame, a single band of the scheduler. Halo lines are refreshed
+    // along with the lines they are taken from, see halo(line, count)
+    public void calculate(int line, int count) {
+        for (int i = line; i < line + count; ++i) {
+            if (body(i)) calculate(i);
+        }
+        halo(line, count);
+    }
+
+    // Halo columns of an interior line, once the interior is calculated
+    protected void border(int line) {
+        for (int k = 0; k < edge; ++k) {
+            final int left = edge - 1 - k;
+            final int right = width - edge + k;
+
+            switch (boundary) {
+                case OPEN: move(line, edge, left); move(line, width - edge - 1, right); break;
+                case REFLECTIVE: move(line, edge + 1 + k, left); move(line, width - edge - 2 - k, right); break;
+                case PERIODIC: move(line, left + width - 2 * edge, left); move(line, right - width + 2 * edge, right); break;
+                default: put(line, left, outside); put(line, right, outside);
+            }
+        }
+    }
+
+    // Line of the same frame a halo line is taken from, -1 if the halo line is filled
+    private int source(int line) {
         final int h = line % height;
-        final boolean body = ((h >= edge) && (h < height - edge));
-        final int dst = line * width;
+        final int top = line - h;
+
+        switch (boundary) {
+            case OPEN: return top + (h < edge ? edge : height - edge - 1);
+            case REFLECTIVE: return top + (h < edge ? 2 * edge - h : 2 * (height - edge - 1) - h);
+            case PERIODIC: return top + (h < edge ? h + height - 2 * edge : h - height + 2 * edge);
+            default: return -1;
+        }
+    }
+
+    // A halo line, once the line it is taken from is calculated
+    protected void halo(int line) {
+        final int source = source(line);
+        if (source < 0) fill(line, outside); else copy(source, line, 1);
+    }
+
+    // Halo lines of the frame taken from lines [line, line + count), or among them if filled.
+    // A scheduler band at least 2 * edge + 1 lines thick holds the lines its own halo lines are
+    // taken from, except when wrapping: the first band then refreshes the last halo and the
+    // last band the first one
+    protected void halo(int line, int count) {
+        final int top = line - line % height;
+
+        for (int k = 0; k < 2 * edge; ++k) {
+            final int target = haloLine(top, k);
+            if (refreshes(line, count, target)) halo(target);
+        }
+    }
+
+    // Halo line k of the frame starting at top, the edge lines above the interior, then below
+    int haloLine(int top, int k) {
+        return top + (k < edge ? k : height - 2 * edge + k);
+    }
+
+    // Whether halo(line, count) refreshes the halo line target
+    boolean refreshes(int line, int count, int target) {
+        final int source = source(target);
+        final int from = (source < 0 ? target : source);
+        return (from >= line) && (from < line + count);
+    }
+
+    // Cell primitives of the halo, models keeping their state elsewhere override them all
+    protected void move(int line, int from, int to) {
+        memory[line * width + to] = memory[line * width + from];
+    }
+
+    protected void put(int line, int w, byte state) {
+        memory[line * width + w] = state;
+    }
+
+    protected void copy(int from, int to, int count) {
+        System.arraycopy(memory, from * width, memory, to * width, count * width);
+    }
+
+    protected void fill(int line, byte state) {
+        Arrays.fill(memory, line * width, (line + 1) * width, state);
+    }
+
+    // Copy the frame starting at the given line into a height * width buffer
+    public void snapshot(int base, byte[] buff) {
+        System.arraycopy(memory, base * width, buff, 0, buff.length);
+    }
+
+    // Copy a single line into the buffer from offset on, for frames too large to snapshot whole
+    public void snapshotLine(int line, byte[] buff, int offset) {
+        System.arraycopy(memory, line * width, buff, offset, width);
+    }
+
+    public long seed() {
+        return seed;
+    }
+
+    // Lines read above and below a line, and cells to either side
+    public int edge() {
+        return edge;
+    }
+
+    // Bytes of state per line kept by a checkpoint, save() and load() move exactly that much
+    public int lineBytes() {
+        return width;
+    }
+
+    public void save(int line, ByteBuffer out) {
+        out.put(memory, line * width, width);
+    }
+
+    public void load(int line, ByteBuffer in) {
+        in.get(memory, line * width, width);
+    }
+
+    // Lines [line, line + count) equal their previous generation. Only models keeping all of
+    // their state in memory may answer this from memory, so by default nothing ever settles
+    public boolean settled(int line, int count) {
+        return false;
+    }
+
+    protected boolean unchanged(int line, int count) {
         final int src = frame(line, -1) * width;
+        final int dst = line * width;
 
-        if (body) for (int w = edge; w < width - edge; ++w) {
-            memory[dst + w] = get(src + w);
-        } else for (int w = 0; w < width; ++w) {
-            memory[dst + w] = wall;
+        for (int i = 0; i < count * width; ++i) {
+            if (memory[dst + i] != memory[src + i]) return false;
         }
-        for (int w = 0; w < edge; ++w) {
-            memory[dst + w] = wall;
-            memory[dst + width - w - 1] = wall;
+        return true;
+    }
+
+    // Carry lines forward instead of calculating them, once their neighbourhood has settled.
+    // Wrapping halo lines belong to the band they are taken from, they are refreshed instead
+    public void carry(int line, int count) {
+        if (!wraps()) {
+            copy(frame(line, -1), line, count);
+            return;
+        }
+        for (int i = line; i < line + count; ++i) {
+            if (body(i)) copy(frame(i, -1), i, 1);
         }
+        halo(line, count);
+    }
+
+    public int touched() {
+        return touched;
     }
 
     public int frame(int line, int step) {
+        if (frames == history) { // ping-pong, odd steps swap the frame
+            if ((step & 1) == 0) return line;
+            return (line < height ? line + height : line - height);
+        }
         return (line + step * height + vertical) % vertical;
     }
 
@@ -53,6 +326,7 @@ public abstract class CellularModel {
         final float dx = (x1 - x0);
 
         if ((y0 < height) && (y1 < height) && (x0 < width) && (x1 < width)) {
+            ++touched;
             for (int h = Math.max(y0 - radius, 0); h < Math.min(y0 + 1 + radius, height); ++h) {
                 final int src = frame(h, -1) * width;
                 final int dst = h * width;
@@ -0,0 +1,166 @@
+package com.psiras.cellularautomata.model;
+
+import com.psiras.cellularautomata.utils.Half;
+
+import java.nio.ByteBuffer;
+
+// Per-cell state of several channels, one plane per channel and frame in a single array.
+// Lines are addressed as in CellularModel, the ring of frames is folded onto depth frames,
+// which must divide the model ring. Byte precision keeps the unit interval only
+public class ChannelField {
+    public enum Precision {FLOAT, HALF, BYTE}
+    public final Precision precision;
+    public final int channels;
+    public final int depth;
+    public final int height;
+    public final int width;
+    public final int plane;
+    public final float[] floats;
+    public final short[] halves;
+    public final byte[] bytes;
+
+    public ChannelField(int height, int width, int channels, int depth, Precision precision) {
+        if ((depth < 2) || ((depth & (depth - 1)) != 0)) {
+            throw new IllegalArgumentException("Depth is not a power of 2");
+        }
+        final int size = depth * channels * height * width;
+        this.precision = precision;
+        this.channels = channels;
+        this.depth = depth;
+        this.height = height;
+        this.width = width;
+        this.plane = height * width;
+        this.floats = (precision == Precision.FLOAT ? new float[size] : null);
+        this.halves = (precision == Precision.HALF ? new short[size] : null);
+        this.bytes = (precision == Precision.BYTE ? new byte[size] : null);
+    }
+
+    // Index of channel 0 at the start of a model line
+    public int offset(int line) {
+        final int frame = (line / height) % depth;
+        return frame * channels * plane + (line % height) * width;
+    }
+
+    public float get(int index) {
+        switch (precision) {
+            case FLOAT: return floats[index];
+            case HALF: return Half.toFloat(halves[index]);
+            default: return (bytes[index] & 0xff) / 255.0f;
+        }
+    }
+
+    public void set(int index, float value) {
+        switch (precision) {
+            case FLOAT: floats[index] = value; break;
+            case HALF: halves[index] = Half.fromFloat(value); break;
+            default: bytes[index] = (byte)Math.round(Math.max(0, Math.min(1, value)) * 255);
+        }
+    }
+
+    // Copies all channels of a line to the same line of the other frames
+    public void spread(int line) {
+        final int row = offset(line);
+        final int h = line % height;
+
+        for (int k = 0; k < depth; ++k) {
+            final int other = offset(h + k * height);
+            if (other == row) continue;
+
+            for (int c = 0; c < channels; ++c) {
+                final int src = row + c * plane;
+                final int dst = other + c * plane;
+                switch (precision) {
+                    case FLOAT: System.arraycopy(floats, src, floats, dst, width); break;
+                    case HALF: System.arraycopy(halves, src, halves, dst, width); break;
+                    default: System.arraycopy(bytes, src, bytes, dst, width);
+                }
+            }
+        }
+    }
+
+    // Copies all channels of a line to another one
+    public void copy(int from, int to) {
+        final int src = offset(from);
+        final int dst = offset(to);
+
+        for (int c = 0; c < channels; ++c) {
+            switch (precision) {
+                case FLOAT: System.arraycopy(floats, src + c * plane, floats, dst + c * plane, width); break;
+                case HALF: System.arraycopy(halves, src + c * plane, halves, dst + c * plane, width); break;
+                default: System.arraycopy(bytes, src + c * plane, bytes, dst + c * plane, width);
+            }
+        }
+    }
+
+    // Copies all channels of a cell of a line to another cell of it
+    public void move(int line, int from, int to) {
+        final int row = offset(line);
+
+        for (int c = 0; c < channels; ++c) {
+            final int index = row + c * plane;
+            switch (precision) {
+                case FLOAT: floats[index + to] = floats[index + from]; break;
+                case HALF: halves[index + to] = halves[index + from]; break;
+                default: bytes[index + to] = bytes[index + from];
+            }
+        }
+    }
+
+    // Bytes of all channels of a line
+    public int lineBytes() {
+        switch (precision) {
+            case FLOAT: return channels * width * 4;
+            case HALF: return channels * width * 2;
+            default: return channels * width;
+        }
+    }
+
+    public void save(int line, ByteBuffer out) {
+        final int row = offset(line);
+        for (int c = 0; c < channels; ++c) {
+            final int index = row + c * plane;
+            switch (precision) {
+                case FLOAT: out.asFloatBuffer().put(floats, index, width); out.position(out.position() + width * 4); break;
+                case HALF: out.asShortBuffer().put(halves, index, width); out.position(out.position() + width * 2); break;
+                default: out.put(bytes, index, width);
+            }
+        }
+    }
+
+    public void load(int line, ByteBuffer in) {
+        final int row = offset(line);
+        for (int c = 0; c < channels; ++c) {
+            final int index = row + c * plane;
+            switch (precision) {
+                case FLOAT: in.asFloatBuffer().get(floats, index, width); in.position(in.position() + width * 4); break;
+                case HALF: in.asShortBuffer().get(halves, index, width); in.position(in.position() + width * 2); break;
+                default: in.get(bytes, index, width);
+            }
+        }
+    }
+
+    // Sums of the square neighbourhood of every channel, one pass over the neighbourhood
+    public void neighborhood(int line, int w, int edge, float[] sums) {
+        final int src = offset(line) + w - edge - edge * width;
+        final int len = (edge << 1) + 1;
+        for (int c = 0; c < channels; ++c) sums[c] = 0;
+
+        for (int dh = 0; dh < len; ++dh) {
+            for (int dw = 0; dw < len; ++dw) {
+                final int index = src + dh * width + dw;
+
+                switch (precision) {
+                    case FLOAT:
+                        for (int c = 0; c < channels; ++c) sums[c] += floats[index + c * plane];
+                        break;
+                    case HALF:
+                        for (int c = 0; c < channels; ++c) sums[c] += Half.toFloat(halves[index + c * plane]);
+                        break;
+                    default:
+                        for (int c = 0; c < channels; ++c) sums[c] += (bytes[index + c * plane] & 0xff);
+                }
+            }
+        }
+        if (precision == Precision.BYTE) for (int c = 0; c < channels; ++c) sums[c] /= 255.0f;
+    }
+}
@@ -0,0 +1,193 @@
+package com.psiras.cellularautomata.model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+// Simulation state of one generation in a file, written and read through mapped windows of
+// whole lines. A header (dimensions, edge, frames, line size, boundary, generation, seed, then the
+// template name of any length) padded to 64 bytes precedes the lines, each line holding whatever
+// the model save()s of it, e.g. memory followed by its channels. Saving a pinned frame again
+// through the same instance rewrites only the bands its scheduler saw change since the last
+// save. Little endian throughout
+public class Checkpoint implements Closeable {
+    private static final int magic = 0x50434143; // "CACP"
+    private static final int version = 2;
+    private static final int fixed = 52; // header up to the template name
+    private static final int align = 64;
+    private static final long window = 1L << 30; // bytes mapped at once, at most
+    private static final Charset utf8 = Charset.forName("UTF-8");
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private BandScheduler scheduler = null; // of the last save, its changes tell what to write
+    private long saved = 0; // generation
+    private int touched = 0; // of the model when saved
+    private long size = -1; // of the file when saved
+
+    public static class Header {
+        public String template;
+        public int height;
+        public int width;
+        public int edge;
+        public int frames;
+        public int lineBytes;
+        public CellularModel.Boundary boundary;
+        public byte outside; // halo state of FIXED boundaries
+        public long generation;
+        public long seed;
+        public int start; // of the lines in the file
+    }
+
+    public Checkpoint(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "rw");
+        this.channel = this.file.getChannel();
+    }
+
+    // Lines written, all of them on the first save, when the shape changes or the model was touched
+    public int save(String template, FrameHandle frame) throws IOException {
+        return save(template, frame.model, frame.generation, frame.scheduler);
+    }
+
+    // Every line, the frame of the generation must hold still meanwhile
+    public int save(String template, CellularModel model, long generation) throws IOException {
+        return save(template, model, generation, null);
+    }
+
+    private int save(String template, CellularModel model, long generation, BandScheduler scheduler) throws IOException {
+        final byte[] label = template.getBytes(utf8);
+        final int header = start(label.length);
+        final int lineBytes = model.lineBytes();
+        final int base = (int)(generation % model.frames) * model.height;
+        final long length = header + (long)model.height * lineBytes;
+        final int touched = model.touched();
+        final boolean full = (scheduler == null) || (scheduler != this.scheduler) || (touched != this.touched)
+                || (size != length) || (file.length() != length);
+        final int step = (scheduler == null ? model.height : scheduler.rows); // lines told changed at once
+        final int per = Math.max((int)Math.min(window / lineBytes, model.height) / step, 1) * step;
+        if (file.length() != length) file.setLength(length);
+        int written = 0;
+
+        for (int first = 0; first < model.height; first += per) {
+            final int count = Math.min(per, model.height - first);
+            MappedByteBuffer region = null;
+
+            for (int h = first; h < first + count; h += step) {
+                final int lines = Math.min(step, first + count - h);
+                if (!full && !scheduler.changed(saved, generation, h, lines)) continue;
+                if (region == null) region = map(first, count, header, lineBytes);
+                region.position((first == 0 ? header : 0) + (h - first) * lineBytes);
+                for (int i = h; i < h + lines; ++i) model.save(base + i, region);
+                written += lines;
+            }
+            if (first == 0) {
+                if (region == null) region = map(first, count, header, lineBytes);
+                region.position(0);
+                region.putInt(magic).putInt(version);
+                region.putInt(model.height).putInt(model.width).putInt(model.edge).putInt(model.frames).putInt(lineBytes);
+                region.put((byte)model.boundary.ordinal()).put(model.outside).putShort((short)0);
+                region.putLong(generation).putLong(model.seed);
+                region.putInt(label.length).put(label);
+            }
+            if (region != null) region.force();
+        }
+
+        this.scheduler = scheduler;
+        this.saved = generation;
+        this.touched = touched;
+        this.size = length;
+        return written;
+    }
+
+    // Lines [first, first + count) of the file, the first window takes the header along
+    private MappedByteBuffer map(int first, int count, int header, int lineBytes) throws IOException {
+        final long from = (first == 0 ? 0 : header + (long)first * lineBytes);
+        final long to = header + (long)(first + count) * lineBytes;
+        final MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE, from, to - from);
+        region.order(ByteOrder.LITTLE_ENDIAN);
+        return region;
+    }
+
+    // Lines start at the first multiple of 64 past the name
+    private static int start(int length) {
+        return (fixed + length + align - 1) / align * align;
+    }
+
+    public static Header header(File file) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            return header(input.getChannel());
+        }
+    }
+
+    private static Header header(FileChannel channel) throws IOException {
+        if (channel.size() < fixed) throw new IOException("Not a checkpoint");
+        ByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, fixed).order(ByteOrder.LITTLE_ENDIAN);
+        if ((head.getInt() != magic) || (head.getInt() != version)) throw new IOException("Not a checkpoint");
+        final Header result = new Header();
+        result.height = head.getInt();
+        result.width = head.getInt();
+        result.edge = head.getInt();
+        result.frames = head.getInt();
+        result.lineBytes = head.getInt();
+        final int boundary = head.get();
+        final CellularModel.Boundary[] boundaries = CellularModel.Boundary.values();
+        if ((boundary < 0) || (boundary >= boundaries.length)) throw new IOException("Unknown boundary " + boundary);
+        result.boundary = boundaries[boundary];
+        result.outside = head.get();
+        head.getShort();
+        result.generation = head.getLong();
+        result.seed = head.getLong();
+        final int length = head.getInt();
+        if ((length < 0) || (start(length) > channel.size())) throw new IOException("Not a checkpoint");
+        final byte[] label = new byte[length];
+        head = channel.map(FileChannel.MapMode.READ_ONLY, fixed, length);
+        head.get(label);
+        result.template = new String(label, utf8);
+        result.start = start(length);
+        return result;
+    }
+
+    // Loads the state into the frame of its generation, continue with ModelExecutor.setModel(model, generation).
+    // The model must be of the template saved, with its dimensions and boundary
+    public static Header restore(File file, String template, CellularModel model) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            final FileChannel channel = input.getChannel();
+            final Header result = header(channel);
+            if (!result.template.equals(template)) {
+                throw new IllegalArgumentException("Checkpoint of " + result.template + ", not " + template);
+            }
+            if ((result.height != model.height) || (result.width != model.width)
+                    || (result.edge != model.edge) || (result.lineBytes != model.lineBytes())) {
+                throw new IllegalArgumentException("Dimensions don't agree");
+            }
+            if ((result.boundary != model.boundary)
+                    || ((result.boundary == CellularModel.Boundary.FIXED) && (result.outside != model.outside))) {
+                throw new IllegalArgumentException("Boundaries don't agree");
+            }
+            final int base = (int)(result.generation % model.frames) * model.height;
+
+            final int per = (int)Math.max(Math.min(window / result.lineBytes, model.height), 1);
+            for (int first = 0; first < model.height; first += per) {
+                final int count = Math.min(per, model.height - first);
+                final ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY,
+                        result.start + (long)first * result.lineBytes, (long)count * result.lineBytes);
+                region.order(ByteOrder.LITTLE_ENDIAN);
+                for (int h = first; h < first + count; ++h) model.load(base + h, region);
+            }
+            model.seed = result.seed;
+            ++model.touched;
+            return result;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        file.close();
+    }
+}
@@ -0,0 +1,133 @@
+package com.psiras.cellularautomata.model;
+
+import com.psiras.cellularautomata.utils.Bitwise;
+import com.psiras.cellularautomata.utils.FloatFFT;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Rules driven by a weighted neighbourhood sum. Small kernels are summed directly per cell,
+// larger ones convolve a whole band at once through FloatFFT, padded against wrap-around.
+// Wall cells contribute nothing to the sum, any other state is non-negative
+public abstract class ConvolutionModel extends CellularModel {
+    protected static final int spectral_edge = 4; // FFT pays off from this kernel radius
+    private static final ThreadLocal<float[][]> scratch = new ThreadLocal<float[][]>() {
+        @Override
+        protected float[][] initialValue() {
+            return new float[][]{new float[0], new float[0]};
+        }
+    };
+    private final ConcurrentHashMap<Integer, float[][]> spectra = new ConcurrentHashMap<Integer, float[][]>();
+    protected final float[] mask;
+    private final boolean spectral;
+    private final int padwidth;
+
+    protected ConvolutionModel(int height, int width, int edge, float[] mask) {
+        super(height, width, edge);
+        final int len = (edge << 1) + 1;
+        if (mask.length != len * len) throw new IllegalArgumentException("Mask doesn't fit edge");
+        this.mask = mask;
+        this.spectral = (edge >= spectral_edge);
+        this.padwidth = Bitwise.rndpow2(width + (edge << 1));
+    }
+
+    protected abstract byte transition(byte state, float sum);
+
+    @Override
+    protected byte get(int pos) {
+        final int len = (edge << 1) + 1;
+        final int src = pos - edge - edge * width;
+        float sum = 0;
+
+        for (int dh = 0; dh < len; ++dh) {
+            for (int dw = 0; dw < len; ++dw) {
+                sum += Math.max(memory[src + dh * width + dw], 0) * mask[dh * len + dw];
+            }
+        }
+        return transition(memory[pos], sum);
+    }
+
+    @Override
+    public boolean settled(int line, int count) {
+        return unchanged(line, count);
+    }
+
+    @Override
+    public void calculate(int line, int count) {
+        if (!spectral) {
+            super.calculate(line, count);
+            return;
+        }
+
+        final int h0 = line % height;
+        final int top = Math.max(h0 - edge, 0);
+        final int bottom = Math.min(h0 + count + edge, height);
+        final int padheight = Bitwise.rndpow2(count + (edge << 2));
+        final float[][] kernel = spectrum(padheight);
+        final float[][] buff = buffers(padheight * padwidth);
+        final float[] re = buff[0];
+        final float[] im = buff[1];
+        final int src = frame(line, -1) - h0;
+
+        for (int h = top; h < bottom; ++h) {
+            final int row = (h - top) * padwidth;
+            final int base = (src + h) * width;
+
+            for (int w = 0; w < width; ++w) {
+                re[row + w] = Math.max(memory[base + w], 0);
+            }
+        }
+
+        FloatFFT.fft2(re, im, padwidth);
+        FloatFFT.multiply(kernel[0], kernel[1], re, im);
+        FloatFFT.ifft2(re, im, padwidth);
+
+        for (int i = line; i < line + count; ++i) {
+            if (!body(i)) continue;
+            final int h = i % height;
+            final int dst = i * width;
+            final int from = (src + h) * width;
+            final int row = (h - top) * padwidth;
+
+            for (int w = edge; w < width - edge; ++w) {
+                memory[dst + w] = transition(memory[from + w], re[row + w]);
+            }
+            border(i);
+        }
+        halo(line, count);
+    }
+
+    // Spectrum of the mirrored mask for a padded band, so the product yields neighbour sums
+    private float[][] spectrum(int padheight) {
+        float[][] kernel = spectra.get(padheight);
+        if (kernel != null) return kernel;
+
+        final int len = (edge << 1) + 1;
+        final float[] re = new float[padheight * padwidth];
+        final float[] im = new float[padheight * padwidth];
+
+        for (int dh = 0; dh < len; ++dh) {
+            for (int dw = 0; dw < len; ++dw) {
+                final int y = (padheight - dh + edge) % padheight;
+                final int x = (padwidth - dw + edge) % padwidth;
+                re[y * padwidth + x] = mask[dh * len + dw];
+            }
+        }
+        FloatFFT.fft2(re, im, padwidth);
+        kernel = new float[][]{re, im};
+        spectra.putIfAbsent(padheight, kernel);
+        return kernel;
+    }
+
+    private static float[][] buffers(int size) {
+        float[][] buff = scratch.get();
+        if (buff[0].length != size) {
+            buff = new float[][]{new float[size], new float[size]};
+            scratch.set(buff);
+        } else {
+            Arrays.fill(buff[0], 0.0f);
+            Arrays.fill(buff[1], 0.0f);
+        }
+        return buff;
+    }
+}
@@ -0,0 +1,183 @@
+package com.psiras.cellularautomata.model;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Runs many models on one set of workers, e.g. a parameter sweep, instead of every model
+// owning threads of its own. Workers take bands from whichever model has one ready: FAIR takes
+// models in turn, PRIORITY prefers higher priorities and takes equal ones in turn. A worker
+// keeps to one model for a generation's worth of bands at most, to keep its caches warm
+public class EnsembleExecutor extends AbstractExecutor {
+    private final CopyOnWriteArrayList<Member> members = new CopyOnWriteArrayList<Member>();
+    private final AtomicInteger cursor = new AtomicInteger(0);
+    private final Policy policy;
+
+    public enum Policy {
+        FAIR, PRIORITY
+    }
+
+    // A model of the ensemble and its progress
+    public class Member {
+        public final CellularModel model;
+        public final long generations; // last generation to calculate
+        public final int priority;
+        private final BandScheduler scheduler;
+        private final AtomicLong bands = new AtomicLong(0);
+        private final AtomicLong busy = new AtomicLong(0);
+        private volatile boolean removed = false;
+
+        private Member(CellularModel model, long generation, long generations, int priority) {
+            this.model = model;
+            this.generations = generations;
+            this.priority = priority;
+            this.scheduler = new BandScheduler(model, threads(), generation);
+        }
+
+        public long generation() {
+            return scheduler.generation();
+        }
+
+        public boolean finished() {
+            return scheduler.generation() >= generations;
+        }
+
+        // Share of the generations done, 0 for a model running on
+        public double progress() {
+            if (generations == Long.MAX_VALUE) return 0;
+            return Math.min((double)scheduler.generation() / generations, 1);
+        }
+
+        public long bands() {
+            return bands.get();
+        }
+
+        public long skipped() {
+            return scheduler.skipped();
+        }
+
+        // Nanoseconds spent calculating by all workers together
+        public long busy() {
+            return busy.get();
+        }
+
+        // Latest complete generation, held still until closed, see ModelExecutor.pin()
+        public FrameHandle pin() {
+            final long generation = scheduler.pin();
+            for (int round = 0; active && (scheduler.generation() < generation); ++round) idle(round);
+            return new FrameHandle(scheduler, generation);
+        }
+
+        public byte[] snapshot(byte[] buff) {
+            try (FrameHandle frame = pin()) {
+                return frame.snapshot(buff);
+            }
+        }
+
+        // A pinned model stalls only itself, workers turn to the others meanwhile
+        private boolean available() {
+            return (scheduler.next() <= generations) && !scheduler.held() && scheduler.ready();
+        }
+    }
+
+    public EnsembleExecutor(int numthreads, Policy policy) {
+        this(numthreads, null, policy);
+    }
+
+    public EnsembleExecutor(int numthreads, Executor pool, Policy policy) {
+        super(numthreads, pool);
+        this.policy = policy;
+    }
+
+    public Member add(CellularModel model, long generations) {
+        return add(model, 0, generations, 0);
+    }
+
+    // Continues from a generation already in the model up to the given one, Long.MAX_VALUE
+    // runs on. Models can join and leave while running
+    public Member add(CellularModel model, long generation, long generations, int priority) {
+        final Member member = new Member(model, generation, generations, priority);
+        members.add(member);
+        wake();
+        return member;
+    }
+
+    // Workers leave the model before their next band, the bands already taken are still calculated
+    public void remove(Member member) {
+        member.removed = true;
+        members.remove(member);
+    }
+
+    public List<Member> members() {
+        return Collections.unmodifiableList(members);
+    }
+
+    public boolean finished() {
+        for (Member member : members) {
+            if (!member.finished()) return false;
+        }
+        return true;
+    }
+
+    // Next model with a band ready, null if none
+    private Member choose() {
+        final Object[] list = members.toArray();
+        final int start = cursor.getAndIncrement() & Integer.MAX_VALUE;
+        Member chosen = null;
+
+        for (int i = 0; i < list.length; ++i) {
+            final Member member = (Member)list[(start + i) % list.length];
+            if (!member.available()) continue;
+            if (policy == Policy.FAIR) return member;
+            if ((chosen == null) || (member.priority > chosen.priority)) chosen = member;
+        }
+        return chosen;
+    }
+
+    // Whether any model has bands left to take
+    private boolean pending() {
+        for (Member member : members) {
+            if (member.scheduler.next() <= member.generations) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void run() {
+        Member member = null;
+        int quantum = 0;
+        int round = 0;
+
+        while (proceed()) {
+            final int seen = signals();
+            // Checked before every band, a quantum doesn't outlast removal or the model stalling
+            if ((member == null) || (quantum <= 0) || member.removed || !member.available()) {
+                member = choose();
+                if (member == null) {
+                    if (pending()) idle(round++); else rest(seen, 0);
+                    continue;
+                }
+                quantum = member.scheduler.bands;
+            }
+            final BandScheduler scheduler = member.scheduler;
+            final long local = scheduler.claimReady(member.generations);
+            if (local < 0) { // not ready yet or past the last generation, another model may have a band ready
+                member = null;
+                continue;
+            }
+
+            // A claimed band is always calculated, as in ModelExecutor. It is ready already,
+            // only a pin taken since could hold it
+            for (round = 0; !scheduler.acquire(local); ++round) idle(round);
+            final long start = System.nanoTime();
+            scheduler.compute(local);
+            member.busy.addAndGet(System.nanoTime() - start);
+            member.bands.incrementAndGet();
+            --quantum;
+            round = 0;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.psiras.cellularautomata.model;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+// A complete generation pinned for reading, see ModelExecutor.pin(). Byte models are read in
+// place: cells() is the model memory and base() the first line of the frame. Other models are
+// unpacked on the first cells() or view(), then cells() is a private copy with base 0; their
+// frames may outgrow an array, read those line by line through line(h). Close it to let the
+// model go on
+public class FrameHandle implements Closeable {
+    final BandScheduler scheduler;
+    public final CellularModel model;
+    public final long generation;
+    public final int line; // first line of the frame in the model
+    private byte[] cells = null;
+    private boolean closed = false;
+
+    FrameHandle(BandScheduler scheduler, long generation) {
+        this.scheduler = scheduler;
+        this.model = scheduler.getModel();
+        this.generation = generation;
+        this.line = scheduler.frame(generation) * model.height;
+    }
+
+    private boolean inPlace() {
+        return model.memory.length > 0;
+    }
+
+    private int size() {
+        final long size = (long)model.height * model.width;
+        if (size > CellularModel.largest) throw new IllegalStateException("Frame doesn't fit an array, read it by line");
+        return (int)size;
+    }
+
+    public synchronized byte[] cells() {
+        if (cells == null) {
+            if (inPlace()) {
+                cells = model.memory;
+            } else {
+                cells = new byte[size()];
+                model.snapshot(line, cells);
+            }
+        }
+        return cells;
+    }
+
+    public int base() {
+        return (inPlace() ? line : 0);
+    }
+
+    // Read-only height * width view, no copy once unpacked
+    public ByteBuffer view() {
+        return ByteBuffer.wrap(cells(), base() * model.width, size()).slice().asReadOnlyBuffer();
+    }
+
+    // Straight into the buffer, nothing unpacked on the way
+    public byte[] snapshot(byte[] buff) {
+        final int size = size();
+        if (cells != null) System.arraycopy(cells, base() * model.width, buff, 0, size);
+        else if (inPlace()) System.arraycopy(model.memory, line * model.width, buff, 0, size);
+        else model.snapshot(line, buff);
+        return buff;
+    }
+
+    // Line h of the frame into a width long buffer, whatever the size of the frame
+    public byte[] line(int h, byte[] buff) {
+        if (cells != null) System.arraycopy(cells, (base() + h) * model.width, buff, 0, model.width);
+        else model.snapshotLine(line + h, buff, 0);
+        return buff;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        scheduler.unpin(generation);
+    }
+}
@@ -0,0 +1,83 @@
+package com.psiras.cellularautomata.model;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Byte cells off the heap, past the reach of a single array: lines are grouped into chunks
+// of one direct buffer each and addressed by long line numbers, the GC never scans them.
+// A chunk is allocated (and zeroed) by the first thread touching it, so with a first-touch
+// policy the pages of a band land on the node of the thread initializing or calculating it.
+// On the desktop the total is bounded by -XX:MaxDirectMemorySize
+public class Grid {
+    public final long lines;
+    public final int width;
+    public final int chunk; // lines per buffer
+    private final AtomicReferenceArray<ByteBuffer> buffers;
+
+    public Grid(long lines, int width, int chunk) {
+        if ((long)chunk * width > Integer.MAX_VALUE) throw new IllegalArgumentException("Chunk doesn't fit a buffer");
+        this.lines = lines;
+        this.width = width;
+        this.chunk = chunk;
+        this.buffers = new AtomicReferenceArray<ByteBuffer>((int)((lines + chunk - 1) / chunk));
+    }
+
+    public long cells() {
+        return lines * width;
+    }
+
+    // Buffer holding the line, only ever accessed by absolute index
+    public ByteBuffer buffer(long line) {
+        final int index = (int)(line / chunk);
+        ByteBuffer buffer = buffers.get(index);
+
+        if (buffer == null) {
+            final long count = Math.min(chunk, lines - (long)index * chunk);
+            buffer = ByteBuffer.allocateDirect((int)(count * width));
+            if (!buffers.compareAndSet(index, null, buffer)) buffer = buffers.get(index);
+        }
+        return buffer;
+    }
+
+    // Index of the line start within its buffer
+    public int offset(long line) {
+        return (int)(line % chunk) * width;
+    }
+
+    public byte get(long line, int w) {
+        return buffer(line).get(offset(line) + w);
+    }
+
+    public void set(long line, int w, byte value) {
+        buffer(line).put(offset(line) + w, value);
+    }
+
+    // A line on its own, position and limit of the view are free to use
+    public ByteBuffer line(long line) {
+        final int offset = offset(line);
+        final ByteBuffer view = buffer(line).duplicate();
+        view.limit(offset + width);
+        view.position(offset);
+        return view;
+    }
+
+    public void fill(long line, byte value) {
+        final ByteBuffer buffer = buffer(line);
+        final int offset = offset(line);
+        for (int w = 0; w < width; ++w) buffer.put(offset + w, value);
+    }
+
+    // Chunks never split a line, so copies go line by line
+    public void copy(long from, long to, long count) {
+        for (long i = 0; i < count; ++i) {
+            line(to + i).put(line(from + i));
+        }
+    }
+
+    public boolean same(long line, long other, long count) {
+        for (long i = 0; i < count; ++i) {
+            if (!line(line + i).equals(line(other + i))) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,132 @@
+package com.psiras.cellularautomata.model;
+
+import com.psiras.cellularautomata.utils.SplitMix;
+
+import java.nio.ByteBuffer;
+
+// Byte states kept off the heap in a Grid rather than in memory, for grids past 2^31 cells
+// (all frames together). Rules address cells by line and column through grid. Snapshots copy
+// into one array, so larger frames are read line by line, see FrameHandle.line()
+public abstract class GridModel extends CellularModel {
+    public final Grid grid;
+
+    protected GridModel(int height, int width, int edge) {
+        this(height, width, edge, history);
+    }
+
+    protected GridModel(int height, int width, int edge, int frames) {
+        super(height, width, edge, frames, new byte[0]);
+        this.grid = new Grid((long)frames * height, width, tile);
+    }
+
+    protected abstract byte get(long line, int w);
+
+    @Override
+    protected byte get(int pos) {
+        return get(pos / width, pos % width);
+    }
+
+    @Override
+    protected void initialize(int h, Initializer init, SplitMix random) {
+        for (int w = 0; w < width; ++w) {
+            grid.set(h, w, (byte)(init.value(h, w, random) * Byte.MAX_VALUE));
+        }
+    }
+
+    @Override
+    public void calculate(int line) {
+        if (!body(line)) {
+            halo(line);
+            return;
+        }
+        computeLine(frame(line, -1), line, edge, width - edge);
+        border(line);
+    }
+
+    // Interior cells [from, to) of line dst from the previous generation at line src
+    protected void computeLine(long src, long dst, int from, int to) {
+        for (int w = from; w < to; ++w) {
+            grid.set(dst, w, get(src, w));
+        }
+    }
+
+    @Override
+    public void snapshot(int base, byte[] buff) {
+        if ((long)height * width > largest) {
+            throw new IllegalStateException("Frame of " + height + "x" + width + " doesn't fit an array, read it by line");
+        }
+        for (int h = 0; h < height; ++h) {
+            grid.line(base + h).get(buff, h * width, width);
+        }
+    }
+
+    @Override
+    public void snapshotLine(int line, byte[] buff, int offset) {
+        grid.line(line).get(buff, offset, width);
+    }
+
+    @Override
+    public void save(int line, ByteBuffer out) {
+        out.put(grid.line(line));
+    }
+
+    @Override
+    public void load(int line, ByteBuffer in) {
+        final ByteBuffer src = in.duplicate();
+        src.limit(src.position() + width);
+        grid.line(line).put(src);
+        in.position(in.position() + width);
+    }
+
+    @Override
+    protected boolean unchanged(int line, int count) {
+        return grid.same(line, frame(line, -1), count);
+    }
+
+    @Override
+    protected void move(int line, int from, int to) {
+        grid.set(line, to, grid.get(line, from));
+    }
+
+    @Override
+    protected void put(int line, int w, byte state) {
+        grid.set(line, w, state);
+    }
+
+    @Override
+    protected void copy(int from, int to, int count) {
+        grid.copy(from, to, count);
+    }
+
+    @Override
+    protected void fill(int line, byte state) {
+        grid.fill(line, state);
+    }
+
+    @Override
+    public void erase(int y0, int x0, int y1, int x1, int radius) {
+        final float dy = (y1 - y0);
+        final float dx = (x1 - x0);
+
+        if ((y0 < height) && (y1 < height) && (x0 < width) && (x1 < width)) {
+            ++touched;
+            for (int h = Math.max(y0 - radius, 0); h < Math.min(y0 + 1 + radius, height); ++h) {
+                final int src = frame(h, -1);
+                final float py = (h - y0);
+
+                for (int w = Math.max(x0 - radius, 0); w < Math.min(x0 + 1 + radius, width); ++w) {
+                    final float px = (w - x0);
+                    float c = (px * dx + py * dy);
+                    c = (c > 1 ? 1 : 0);
+
+                    final float ddy = c * dy - py;
+                    final float ddx = c * dx - px;
+                    if (Math.sqrt(ddy * ddy + ddx * ddx) < radius) {
+                        grid.set(h, w, (byte)0);
+                        grid.set(src, w, (byte)0);
+                    }
+                }
+            }
+        }
+    }
+}
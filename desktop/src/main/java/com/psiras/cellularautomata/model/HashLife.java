@@ -0,0 +1,249 @@
+package com.psiras.cellularautomata.model;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// See: https://en.wikipedia.org/wiki/Hashlife
+// Unbounded plane of a two-state Moore rule (born/survive masks as in BinaryModel) kept as a
+// hash-consed quadtree. Equal squares share one node, so the result of a square is computed
+// once and reused wherever and whenever it recurs, which allows jumps of 2^k generations.
+// The canonical table is bounded, least recently used nodes drop out of it (still correct,
+// only no longer shared). The model walls are not simulated: cells leaving the model area
+// go on evolving outside of it and are clipped when stored back
+public class HashLife {
+    private final Node dead = new Node(0);
+    private final Node alive = new Node(1);
+    private final Node[] empty = new Node[64];
+    private final Map<Node, Node> nodes;
+    public final int born;
+    public final int survive;
+    private Node root;
+    private long top = 0; // plane coordinates of the root corner
+    private long left = 0;
+    private long generation = 0;
+
+    private static final class Node {
+        final Node nw, ne, sw, se;
+        final int level;
+        final long population;
+        final int hash;
+        Node result = null; // centre square after 2^step generations
+        int step = -1;
+
+        Node(long population) {
+            this.nw = this.ne = this.sw = this.se = null;
+            this.level = 0;
+            this.population = population;
+            this.hash = (int)population;
+        }
+
+        Node(Node nw, Node ne, Node sw, Node se) {
+            this.nw = nw;
+            this.ne = ne;
+            this.sw = sw;
+            this.se = se;
+            this.level = nw.level + 1;
+            this.population = nw.population + ne.population + sw.population + se.population;
+            this.hash = ((System.identityHashCode(nw) * 31 + System.identityHashCode(ne)) * 31
+                    + System.identityHashCode(sw)) * 31 + System.identityHashCode(se);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Node)) return false;
+            final Node node = (Node)other;
+            return (nw == node.nw) && (ne == node.ne) && (sw == node.sw) && (se == node.se);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    public HashLife(int born, int survive, final int capacity) {
+        if ((born & 1) != 0) throw new IllegalArgumentException("Births from nothing fill the plane");
+        this.born = born;
+        this.survive = survive;
+        this.nodes = new LinkedHashMap<Node, Node>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Node, Node> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.empty[0] = dead;
+        this.root = empty(3);
+    }
+
+    public HashLife(BinaryModel model, int capacity) {
+        this(model.born, model.survive, capacity);
+    }
+
+    public long generation() {
+        return generation;
+    }
+
+    public long population() {
+        return root.population;
+    }
+
+    // Cells of one frame, values of 1 are alive (the CellularModel memory layout)
+    public void load(CellularModel model, int base) {
+        final byte[] cells = new byte[model.height * model.width];
+        model.snapshot(base, cells);
+        load(cells, model.height, model.width);
+    }
+
+    public void load(byte[] cells, int height, int width) {
+        int level = 3;
+        while ((1L << level) < Math.max(height, width)) ++level;
+        root = build(cells, height, width, 0, 0, level);
+        top = left = 0;
+        generation = 0;
+    }
+
+    private Node build(byte[] cells, int height, int width, int y, int x, int level) {
+        if ((y >= height) || (x >= width)) return empty(level);
+        if (level == 0) return (cells[y * width + x] == 1 ? alive : dead);
+        final int half = 1 << (level - 1);
+
+        return join(build(cells, height, width, y, x, level - 1),
+                build(cells, height, width, y, x + half, level - 1),
+                build(cells, height, width, y + half, x, level - 1),
+                build(cells, height, width, y + half, x + half, level - 1));
+    }
+
+    // Writes the model area of the plane into one frame, the walls stay dead
+    public void store(BinaryModel model, int base) {
+        Arrays.fill(model.bits, base * model.words, (base + model.height) * model.words, 0L);
+        store(model, base, root, top, left);
+        ++model.touched;
+    }
+
+    private void store(BinaryModel model, int base, Node node, long y, long x) {
+        final long size = 1L << node.level;
+        if ((node.population == 0) || (y + size <= 1) || (x + size <= 1)
+                || (y >= model.height - 1) || (x >= model.width - 1)) return;
+
+        if (node.level == 0) {
+            model.bits[(base + (int)y) * model.words + ((int)x >>> 6)] |= (1L << x);
+            return;
+        }
+        final long half = size >>> 1;
+        store(model, base, node.nw, y, x);
+        store(model, base, node.ne, y, x + half);
+        store(model, base, node.sw, y + half, x);
+        store(model, base, node.se, y + half, x + half);
+    }
+
+    // Advances 2^k generations at once, the pattern grows by at most 2^k cells a side meanwhile
+    public void advance(int k) {
+        while ((root.level < k + 3) || !centred(root)) root = expand(root);
+        final long quarter = 1L << (root.level - 2);
+        root = successor(root, k);
+        top += quarter;
+        left += quarter;
+        generation += (1L << k);
+    }
+
+    private Node join(Node nw, Node ne, Node sw, Node se) {
+        final Node node = new Node(nw, ne, sw, se);
+        final Node known = nodes.get(node);
+        if (known != null) return known;
+        nodes.put(node, node);
+        return node;
+    }
+
+    private Node empty(int level) {
+        if (empty[level] == null) {
+            final Node half = empty(level - 1);
+            empty[level] = join(half, half, half, half);
+        }
+        return empty[level];
+    }
+
+    // The same square inside a twice larger empty one
+    private Node expand(Node node) {
+        final Node border = empty(node.level - 1);
+        top -= (1L << (node.level - 1));
+        left -= (1L << (node.level - 1));
+        return join(join(border, border, border, node.nw), join(border, border, node.ne, border),
+                join(border, node.sw, border, border), join(node.se, border, border, border));
+    }
+
+    // Everything alive lies within the central square of a quarter of the side
+    private static boolean centred(Node node) {
+        return (node.nw.population == node.nw.se.se.population)
+                && (node.ne.population == node.ne.sw.sw.population)
+                && (node.sw.population == node.sw.ne.ne.population)
+                && (node.se.population == node.se.nw.nw.population);
+    }
+
+    private Node centre(Node node) {
+        return join(node.nw.se, node.ne.sw, node.sw.ne, node.se.nw);
+    }
+
+    private Node horizontal(Node w, Node e) {
+        return join(w.ne, e.nw, w.se, e.sw);
+    }
+
+    private Node vertical(Node n, Node s) {
+        return join(n.sw, n.se, s.nw, s.ne);
+    }
+
+    // Centre square of half the size, 2^step generations ahead (step <= level - 2)
+    private Node successor(Node node, int step) {
+        if (node.population == 0) return empty(node.level - 1);
+        if ((node.result != null) && (node.step == step)) return node.result;
+        Node result;
+
+        if (node.level == 2) {
+            result = base(node);
+        } else {
+            final boolean full = (step == node.level - 2);
+            final Node[] m = {
+                    node.nw, horizontal(node.nw, node.ne), node.ne,
+                    vertical(node.nw, node.sw), centre(node), vertical(node.ne, node.se),
+                    node.sw, horizontal(node.sw, node.se), node.se};
+            for (int i = 0; i < m.length; ++i) {
+                m[i] = (full ? successor(m[i], step - 1) : centre(m[i]));
+            }
+            final int next = (full ? step - 1 : step);
+            result = join(successor(join(m[0], m[1], m[3], m[4]), next),
+                    successor(join(m[1], m[2], m[4], m[5]), next),
+                    successor(join(m[3], m[4], m[6], m[7]), next),
+                    successor(join(m[4], m[5], m[7], m[8]), next));
+        }
+        node.result = result;
+        node.step = step;
+        return result;
+    }
+
+    // One generation of the 2x2 centre of a 4x4 square, straight from the rule
+    private Node base(Node node) {
+        int cells = 0;
+        for (int y = 0; y < 4; ++y) {
+            for (int x = 0; x < 4; ++x) {
+                final Node quad = (y < 2 ? (x < 2 ? node.nw : node.ne) : (x < 2 ? node.sw : node.se));
+                final Node leaf = ((y & 1) == 0 ? ((x & 1) == 0 ? quad.nw : quad.ne) : ((x & 1) == 0 ? quad.sw : quad.se));
+                if (leaf.population != 0) cells |= 1 << (y * 4 + x);
+            }
+        }
+        final Node[] next = new Node[4];
+        for (int i = 0; i < 4; ++i) {
+            final int y = 1 + (i >> 1);
+            final int x = 1 + (i & 1);
+            int neighbours = 0;
+
+            for (int dy = -1; dy <= 1; ++dy) {
+                for (int dx = -1; dx <= 1; ++dx) {
+                    if (((dy != 0) || (dx != 0)) && (((cells >>> ((y + dy) * 4 + x + dx)) & 1) != 0)) ++neighbours;
+                }
+            }
+            final int rule = (((cells >>> (y * 4 + x)) & 1) != 0 ? survive : born);
+            next[i] = (((rule >>> neighbours) & 1) != 0 ? alive : dead);
+        }
+        return join(next[0], next[1], next[2], next[3]);
+    }
+}
@@ -0,0 +1,43 @@
+package com.psiras.cellularautomata.model;
+
+import com.psiras.cellularautomata.utils.SplitMix;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+// Brightness of an image stretched over the grid, nearest pixel. Desktop only (javax.imageio)
+public class ImageInitializer implements Initializer {
+    private final float[] brightness;
+    private final int rows;
+    private final int cols;
+    private final int height;
+    private final int width;
+
+    public ImageInitializer(File file, int height, int width) throws IOException {
+        final BufferedImage image = ImageIO.read(file);
+        if (image == null) throw new IOException("Unsupported image: " + file);
+        this.rows = image.getHeight();
+        this.cols = image.getWidth();
+        this.brightness = new float[rows * cols];
+        this.height = height;
+        this.width = width;
+
+        for (int y = 0; y < rows; ++y) {
+            for (int x = 0; x < cols; ++x) {
+                final int rgb = image.getRGB(x, y);
+                final int luma = 299 * ((rgb >> 16) & 0xff) + 587 * ((rgb >> 8) & 0xff) + 114 * (rgb & 0xff);
+                brightness[y * cols + x] = luma / (1000 * 255.0f);
+            }
+        }
+    }
+
+    @Override
+    public float value(int h, int w, SplitMix random) {
+        final int y = (int)((long)h * rows / height);
+        final int x = (int)((long)w * cols / width);
+        return brightness[y * cols + x];
+    }
+}
@@ -0,0 +1,12 @@
+package com.psiras.cellularautomata.model;
+
+import com.psiras.cellularautomata.utils.SplitMix;
+
+// Initial state of cell (h, w) in [0, 1], models scale it to their own range.
+// The random stream belongs to the cell's tile and is consumed in row order
+public interface Initializer {
+    Initializer empty = (h, w, random) -> 0.0f;
+    Initializer noise = (h, w, random) -> random.nextFloat();
+
+    float value(int h, int w, SplitMix random);
+}
@@ -0,0 +1,147 @@
+package com.psiras.cellularautomata.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Halo exchange with the neighbouring Strip over a socket. Blocks of a fixed size go out on a
+// sender thread and come in on a receiver thread, so calculating never waits on the network
+// unless the neighbour's block is late. Both ends agree on the block size when connecting
+public class Link implements Closeable {
+    private static final int depth = 2; // blocks queued either way
+    private final SocketChannel channel;
+    private final int block;
+    private final BlockingQueue<ByteBuffer> outbox = new ArrayBlockingQueue<ByteBuffer>(depth);
+    private final BlockingQueue<ByteBuffer> inbox = new ArrayBlockingQueue<ByteBuffer>(depth);
+    private final Thread sender;
+    private final Thread receiver;
+    private volatile IOException failure = null;
+    private volatile boolean closed = false;
+
+    public Link(SocketChannel channel, int block) throws IOException {
+        this.channel = channel;
+        this.block = block;
+        channel.socket().setTcpNoDelay(true);
+
+        final ByteBuffer hello = ByteBuffer.allocate(4);
+        hello.putInt(block).flip();
+        while (hello.hasRemaining()) channel.write(hello);
+        hello.clear();
+        fill(hello);
+        if (hello.getInt(0) != block) {
+            channel.close();
+            throw new IllegalArgumentException("Strips don't agree");
+        }
+
+        this.sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "link-sender");
+        this.receiver = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                collect();
+            }
+        }, "link-receiver");
+        sender.setDaemon(true);
+        receiver.setDaemon(true);
+        sender.start();
+        receiver.start();
+    }
+
+    public static Link connect(String host, int port, int block) throws IOException {
+        return new Link(SocketChannel.open(new InetSocketAddress(host, port)), block);
+    }
+
+    public static Link accept(ServerSocketChannel server, int block) throws IOException {
+        return new Link(server.accept(), block);
+    }
+
+    private void fill(ByteBuffer buff) throws IOException {
+        while (buff.hasRemaining()) {
+            if (channel.read(buff) < 0) throw new IOException("Neighbour strip has gone");
+        }
+    }
+
+    // Leaves once closed and everything queued is written
+    private void drain() {
+        try {
+            while (true) {
+                final ByteBuffer buff = outbox.poll(100, TimeUnit.MILLISECONDS);
+                if (buff != null) {
+                    while (buff.hasRemaining()) channel.write(buff);
+                } else if (closed) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void collect() {
+        try {
+            while (!closed) {
+                final ByteBuffer buff = ByteBuffer.allocate(block);
+                fill(buff);
+                buff.flip();
+                while (!closed && !inbox.offer(buff, 100, TimeUnit.MILLISECONDS)) continue;
+            }
+        } catch (IOException e) {
+            if (!closed) failure = e;
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Queues a block, flipped for reading
+    public void send(ByteBuffer buff) throws IOException {
+        if (buff.remaining() != block) throw new IllegalArgumentException("Block size doesn't agree");
+        try {
+            while (!outbox.offer(buff, 100, TimeUnit.MILLISECONDS)) check();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    // The next block of the neighbour, waiting for it if need be
+    public ByteBuffer receive() throws IOException {
+        try {
+            while (true) {
+                final ByteBuffer buff = inbox.poll(100, TimeUnit.MILLISECONDS);
+                if (buff != null) return buff;
+                check();
+            }
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void check() throws IOException {
+        if (failure != null) throw failure;
+        if (closed) throw new IOException("Link closed");
+    }
+
+    // Blocks queued to send are written first. The neighbour has had every block it needs
+    // once this end has received its last one, so a neighbour closing early loses nothing
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            sender.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        channel.close();
+    }
+}
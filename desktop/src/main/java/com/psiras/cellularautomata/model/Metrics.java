@@ -0,0 +1,150 @@
+package com.psiras.cellularautomata.model;
+
+import com.psiras.cellularautomata.utils.Histogram;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Counters of a ModelExecutor, striped by worker: every worker writes only its own slots, so
+// the hot loop never contends, and readers sum the stripes. Per worker time is split into
+// busy (calculating), wait (for neighbouring bands), held (by pinned frames) and idle (with no
+// band to claim: paused, governed, past the horizon or a pass held by pins). Snapshot latency
+// is taken by pin(), render latency is recorded by whoever paints
+public class Metrics implements MetricsMXBean {
+    private static final int stride = 8; // longs per worker, a cache line apart
+    private final ModelExecutor executor;
+    private final int workers;
+    private final AtomicLongArray slots;
+    private final Histogram[] compute;
+    public final Histogram snapshot = new Histogram();
+    public final Histogram render = new Histogram();
+    static final int busy = 0;
+    static final int wait = 1;
+    static final int held = 2;
+    static final int bands = 3;
+    static final int idle = 4;
+
+    public Metrics(ModelExecutor executor, int workers) {
+        this.executor = executor;
+        this.workers = workers;
+        this.slots = new AtomicLongArray(workers * stride);
+        this.compute = new Histogram[workers];
+        for (int i = 0; i < workers; ++i) compute[i] = new Histogram();
+    }
+
+    void add(int worker, int slot, long value) {
+        slots.lazySet(worker * stride + slot, slots.get(worker * stride + slot) + value);
+    }
+
+    void computed(int worker, long nanos) {
+        add(worker, busy, nanos);
+        add(worker, bands, 1);
+        compute[worker].record(nanos);
+    }
+
+    private long sum(int slot) {
+        long sum = 0;
+        for (int i = 0; i < workers; ++i) sum += slots.get(i * stride + slot);
+        return sum;
+    }
+
+    private long[] millis(int slot) {
+        final long[] millis = new long[workers];
+        for (int i = 0; i < workers; ++i) millis[i] = slots.get(i * stride + slot) / 1000000;
+        return millis;
+    }
+
+    // Band calculation times of all workers together, in nanoseconds
+    public Histogram compute() {
+        final Histogram total = new Histogram();
+        for (Histogram histogram : compute) total.add(histogram);
+        return total;
+    }
+
+    @Override
+    public long getGeneration() {
+        return executor.generation();
+    }
+
+    @Override
+    public long getBandsComputed() {
+        return sum(bands);
+    }
+
+    @Override
+    public long getBandsSkipped() {
+        return executor.skipped();
+    }
+
+    @Override
+    public long getComputeP50() {
+        return compute().percentile(0.50) / 1000;
+    }
+
+    @Override
+    public long getComputeP99() {
+        return compute().percentile(0.99) / 1000;
+    }
+
+    @Override
+    public long getComputeMax() {
+        return compute().max() / 1000;
+    }
+
+    @Override
+    public long getSnapshotP50() {
+        return snapshot.percentile(0.50) / 1000;
+    }
+
+    @Override
+    public long getSnapshotP99() {
+        return snapshot.percentile(0.99) / 1000;
+    }
+
+    @Override
+    public long getRenderP50() {
+        return render.percentile(0.50) / 1000;
+    }
+
+    @Override
+    public long getRenderP99() {
+        return render.percentile(0.99) / 1000;
+    }
+
+    @Override
+    public long[] getWorkerBusyMillis() {
+        return millis(busy);
+    }
+
+    @Override
+    public long[] getWorkerWaitMillis() {
+        return millis(wait);
+    }
+
+    @Override
+    public long[] getWorkerHeldMillis() {
+        return millis(held);
+    }
+
+    @Override
+    public long[] getWorkerIdleMillis() {
+        return millis(idle);
+    }
+
+    // Busiest worker against the average, 1 when the load is even
+    @Override
+    public double getImbalance() {
+        long most = 0;
+        for (int i = 0; i < workers; ++i) most = Math.max(most, slots.get(i * stride + busy));
+        final long total = sum(busy);
+        return (total == 0 ? 1 : (double)most * workers / total);
+    }
+
+    // Workers may still add to what they read before, fine for monitoring
+    @Override
+    public void reset() {
+        for (int i = 0; i < slots.length(); ++i) slots.set(i, 0);
+        for (Histogram histogram : compute) histogram.reset();
+        snapshot.reset();
+        render.reset();
+    }
+}
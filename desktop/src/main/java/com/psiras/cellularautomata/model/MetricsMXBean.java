@@ -0,0 +1,36 @@
+package com.psiras.cellularautomata.model;
+
+// Management view of Metrics, times in microseconds unless stated otherwise
+public interface MetricsMXBean {
+    long getGeneration();
+
+    long getBandsComputed();
+
+    long getBandsSkipped();
+
+    long getComputeP50();
+
+    long getComputeP99();
+
+    long getComputeMax();
+
+    long getSnapshotP50();
+
+    long getSnapshotP99();
+
+    long getRenderP50();
+
+    long getRenderP99();
+
+    long[] getWorkerBusyMillis();
+
+    long[] getWorkerWaitMillis();
+
+    long[] getWorkerHeldMillis();
+
+    long[] getWorkerIdleMillis();
+
+    double getImbalance();
+
+    void reset();
+}
@@ -1,49 +1,226 @@
 package com.psiras.cellularautomata.model;
 
-import java.lang.reflect.Array;
-import java.util.Arrays;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class ModelExecutor extends AbstractExecutor {
-    private final AtomicInteger line = new AtomicInteger(0);
+    private volatile BandScheduler scheduler = null;
     private CellularModel model = null;
-    private byte[] buff = new byte[0];
+    private final AtomicInteger workers = new AtomicInteger(0);
+    private final Metrics metrics = new Metrics(this, threads());
+    private final AtomicReference<Pace> pace = new AtomicReference<Pace>(null); // null runs unthrottled
+    private volatile long horizon = Long.MAX_VALUE; // last generation workers may start
+
+    // Generation g may start period * g nanoseconds after epoch
+    private static class Pace {
+        final long period;
+        final long epoch;
+
+        Pace(long period, long epoch) {
+            this.period = period;
+            this.epoch = epoch;
+        }
+    }
+
+    public ModelExecutor(int numthreads) {
+        super(numthreads);
+    }
 
     public ModelExecutor(float power, int reserved) {
         super(power, reserved);
     }
 
+    public ModelExecutor(int numthreads, Executor pool) {
+        super(numthreads, pool);
+    }
+
+    public Metrics metrics() {
+        return metrics;
+    }
+
+    public long skipped() {
+        return scheduler.skipped();
+    }
+
     public void setModel(CellularModel model) {
-        this.model = model;
+        setModel(model, 0);
+    }
 
-        final int size = model.height * model.width;
-        if (buff.length != size) buff = new byte[size];
+    public void setModel(CellularModel model, long generation) {
+        setModel(model, generation, 1);
+    }
+
+    // Depth above 1 runs tile passes of that many generations, see BandScheduler
+    public void setModel(CellularModel model, long generation, int depth) {
+        this.model = model;
+        this.scheduler = new BandScheduler(model, threads(), generation, depth);
     }
 
     public CellularModel getModel() {
         return model;
     }
 
+    // Generations per second at most, workers rest in between. 0 runs as fast as possible
+    public void setRate(double rate) {
+        final BandScheduler scheduler = this.scheduler;
+        final long period = Math.max((long)(1e9 / rate), 1);
+        final long next = (scheduler == null ? 0 : scheduler.next());
+        pace.set(rate > 0 ? new Pace(period, System.nanoTime() - next * period) : null);
+        wake();
+    }
+
+    public double getRate() {
+        final Pace pace = this.pace.get();
+        return (pace == null ? 0 : 1e9 / pace.period);
+    }
+
+    // Workers start no generation after the given one and rest there, Long.MAX_VALUE runs on.
+    // Resumes a paused executor
+    public void runTo(long generation) {
+        this.horizon = generation;
+        resume();
+    }
+
+    // Runs count generations past the current stop, or past the latest complete generation
+    // when there is none, e.g. one by one from pause()
+    public void step(int count) {
+        final long horizon = this.horizon;
+        runTo((horizon == Long.MAX_VALUE ? scheduler.generation() : horizon) + count);
+    }
+
+    public long horizon() {
+        return horizon;
+    }
+
+    public long generation() {
+        return scheduler.generation();
+    }
+
+    // First line of the latest generation, which later generations may be writing over
     public int baseline() {
-        final int base = model.frame(line.get(), -1);
-        return (base / model.height) * model.height;
+        return scheduler.frame(scheduler.generation()) * model.height;
+    }
+
+    // The latest generation no band has started to overwrite, complete and held still until
+    // closed. Ping-pong models run at most one generation ahead of a pinned frame meanwhile
+    public FrameHandle pin() {
+        final long start = System.nanoTime();
+        final BandScheduler scheduler = this.scheduler;
+        scheduler.drain();
+        for (int round = 0; active && !scheduler.drained(); ++round) idle(round);
+        final long generation = scheduler.pin();
+        scheduler.undrain();
+
+        // a stopped executor won't complete it
+        for (int round = 0; active && (scheduler.generation() < generation); ++round) idle(round);
+        final FrameHandle frame = new FrameHandle(scheduler, generation);
+        metrics.snapshot.record(System.nanoTime() - start);
+        return frame;
+    }
+
+    // Holds a generation, possibly one still to come, until pinned(generation) is closed or
+    // release(generation) is called. False if its frame is already being reused
+    public boolean reserve(long generation) {
+        final BandScheduler scheduler = this.scheduler;
+        scheduler.drain();
+        for (int round = 0; active && !scheduler.drained(); ++round) idle(round);
+        final boolean reserved = scheduler.pin(generation);
+        scheduler.undrain();
+        return reserved;
+    }
+
+    public void release(long generation) {
+        scheduler.unpin(generation);
+    }
+
+    // Handle of a reserved generation, once generation() has reached it
+    public FrameHandle pinned(long generation) {
+        return new FrameHandle(scheduler, generation);
+    }
+
+    // Bands published to a listener instead of pinned frames, copies that never hold the workers.
+    // Returns the first generation told of whole, see BandScheduler.listen()
+    public long listen(BandScheduler.Listener listener) {
+        return scheduler.listen(listener);
+    }
+
+    public byte[] snapshot(byte[] buff) {
+        try (FrameHandle frame = pin()) {
+            return frame.snapshot(buff);
+        }
     }
 
     public byte[] snapshot() {
-        final int base = baseline() * model.width;
-        System.arraycopy(model.memory, base, buff, 0, buff.length);
-        return buff;
+        return snapshot(new byte[model.height * model.width]);
     }
 
     @Override
     public void run() {
-        while (active) {
-            final int local = line.getAndIncrement();
-            model.calculate(local % model.vertical);
+        final BandScheduler scheduler = this.scheduler;
+        final int worker = workers.getAndIncrement() % threads();
+        final long[] tickets = new long[scheduler.depth];
+        int stalled = 0;
 
-            if (local % (model.vertical * 1000) == 0) {
-                System.out.println(local);
+        // A claimed band is always calculated, even when terminating, or later bands would
+        // wait for it forever after a restart
+        while (proceed()) {
+            final int seen = signals();
+            final long start = System.nanoTime();
+            final int count = scheduler.claim(limit(scheduler, start), tickets);
+            if (count == 0) {
+                if (!hold(scheduler, seen, start)) idle(stalled++); // a pass held by pins
+                metrics.add(worker, Metrics.idle, System.nanoTime() - start);
+                continue;
             }
+            stalled = 0;
+
+            for (int i = 0; i < count; ++i) {
+                final long local = tickets[i];
+                final long claimed = System.nanoTime();
+                for (int round = 0; !scheduler.ready(local); ++round) idle(round);
+                final long ready = System.nanoTime();
+                for (int round = 0; !scheduler.acquire(local); ++round) idle(round);
+                final long acquired = System.nanoTime();
+                scheduler.compute(local);
+
+                metrics.add(worker, Metrics.wait, ready - claimed);
+                metrics.add(worker, Metrics.held, acquired - ready);
+                metrics.computed(worker, System.nanoTime() - acquired);
+            }
+        }
+    }
+
+    // Last generation that may start now. A governor fallen behind starts over from the next
+    // generation instead of catching up in a burst
+    private long limit(BandScheduler scheduler, long now) {
+        final Pace pace = this.pace.get();
+        if (pace == null) return horizon;
+        final long next = scheduler.next();
+        long allowed = (now - pace.epoch) / pace.period;
+
+        if (allowed > next) {
+            this.pace.compareAndSet(pace, new Pace(pace.period, now - next * pace.period));
+            allowed = next;
+        }
+        return Math.min(horizon, allowed);
+    }
+
+    // Rests until the next generation is due, or until woken past the horizon. False if
+    // neither holds the next generation back
+    private boolean hold(BandScheduler scheduler, int seen, long now) {
+        final Pace pace = this.pace.get();
+        final long next = scheduler.next();
+
+        if (next > horizon) {
+            rest(seen, 0);
+            return true;
+        } else if (pace != null) {
+            final long due = pace.epoch + next * pace.period;
+            if (due <= now) return false;
+            rest(seen, due - now);
+            return true;
         }
+        return false;
     }
 }
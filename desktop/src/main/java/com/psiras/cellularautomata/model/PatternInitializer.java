@@ -0,0 +1,82 @@
+package com.psiras.cellularautomata.model;
+
+import com.psiras.cellularautomata.utils.SplitMix;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+// Run Length Encoded pattern (as used by Golly and LifeWiki), centered on the grid.
+// States b and . are dead, any other letter is alive
+// See: https://conwaylife.com/wiki/Run_Length_Encoded
+public class PatternInitializer implements Initializer {
+    private final boolean[][] cells;
+    private final int top;
+    private final int left;
+
+    public PatternInitializer(Reader reader, int height, int width) throws IOException {
+        this.cells = parse(new BufferedReader(reader));
+        final int rows = cells.length;
+        final int cols = (rows > 0 ? cells[0].length : 0);
+        if ((rows > height) || (cols > width)) throw new IllegalArgumentException("Pattern doesn't fit");
+        this.top = (height - rows) >> 1;
+        this.left = (width - cols) >> 1;
+    }
+
+    @Override
+    public float value(int h, int w, SplitMix random) {
+        final int y = h - top;
+        final int x = w - left;
+        if ((y < 0) || (y >= cells.length) || (x < 0) || (x >= cells[y].length)) return 0.0f;
+        return (cells[y][x] ? 1.0f : 0.0f);
+    }
+
+    private static boolean[][] parse(BufferedReader reader) throws IOException {
+        int rows = 0;
+        int cols = 0;
+        final StringBuilder body = new StringBuilder();
+
+        for (String line; (line = reader.readLine()) != null; ) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            if (line.startsWith("x")) {
+                for (String item : line.split(",")) {
+                    final String[] pair = item.split("=");
+                    if (pair[0].trim().equals("x")) cols = Integer.parseInt(pair[1].trim());
+                    if (pair[0].trim().equals("y")) rows = Integer.parseInt(pair[1].trim());
+                }
+            } else {
+                body.append(line);
+            }
+        }
+
+        final boolean[][] cells = new boolean[rows][cols];
+        int count = 0;
+        int y = 0;
+        int x = 0;
+
+        for (int i = 0; i < body.length(); ++i) {
+            final char c = body.charAt(i);
+            if (Character.isDigit(c)) {
+                count = count * 10 + (c - '0');
+                continue;
+            }
+            final int run = Math.max(count, 1);
+            count = 0;
+
+            if (c == '!') {
+                break;
+            } else if (c == '$') {
+                y += run;
+                x = 0;
+            } else if ((c == 'b') || (c == '.')) {
+                x += run;
+            } else if (Character.isLetter(c)) {
+                for (int k = 0; k < run; ++k, ++x) {
+                    if ((y < rows) && (x < cols)) cells[y][x] = true;
+                }
+            }
+        }
+        return cells;
+    }
+}
@@ -0,0 +1,373 @@
+package com.psiras.cellularautomata.model;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.Deflater;
+
+// Records every interval-th generation of an executor into a Recording file. Frames are held in
+// chunks of whole lines, so they may outgrow an array. DROP copies each band of a recorded
+// generation into a pooled frame as the scheduler publishes it, never holding compute threads;
+// with no frame free the generation is dropped. BLOCK has a capture thread reserve generations
+// ahead and copy them pinned, a full queue then holds the compute threads at the reserved frame.
+// Frames queue up for an encoder thread, which XORs them against the previous recorded frame,
+// run-length encodes the zeros and deflates each chunk. Every keyframes-th frame is encoded
+// against nothing, so readers can seek
+public class Recorder implements Closeable {
+    public enum Overflow {DROP, BLOCK}
+    static final int magic = 0x43524143; // "CARC"
+    static final int version = 2;
+    private static final long poll = 50000; // ns between generation checks
+    private static final int chunk = 1 << 22; // cells per chunk, give or take a line
+    private final ModelExecutor executor;
+    private final CellularModel model;
+    private final DataOutputStream out;
+    private final int interval;
+    private final int keyframes;
+    private final Overflow overflow;
+    private final int lines; // per chunk
+    private final int pool; // frames at most, queued, filling or encoded
+    private final ArrayBlockingQueue<Frame> queue;
+    private final ArrayBlockingQueue<Frame> free;
+    private final AtomicInteger allocated = new AtomicInteger(0);
+    private final ConcurrentHashMap<Long, Frame> filling = new ConcurrentHashMap<Long, Frame>();
+    private final Frame end = new Frame(null); // end of stream
+    private final Thread capturer;
+    private final Thread encoder;
+    private final AtomicLong recorded = new AtomicLong(0);
+    private final AtomicLong dropped = new AtomicLong(0);
+    private final AtomicLong missed = new AtomicLong(0);
+    private volatile boolean running = true;
+    private volatile long first = Long.MAX_VALUE; // first generation DROP records
+    private long position = 0;
+    private long[] index = new long[64]; // generation, offset, key per record
+    private int records = 0;
+    private IOException failure = null;
+
+    private static final class Frame {
+        final byte[][] chunks;
+        final AtomicInteger pending = new AtomicInteger(); // lines not copied yet
+        long generation;
+
+        Frame(byte[][] chunks) {
+            this.chunks = chunks;
+        }
+    }
+
+    public Recorder(ModelExecutor executor, File file, int interval, int keyframes, int capacity, Overflow overflow) throws IOException {
+        this.executor = executor;
+        this.model = executor.getModel();
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        this.interval = Math.max(interval, 1);
+        this.keyframes = Math.max(keyframes, 1);
+        this.overflow = overflow;
+        this.lines = Math.max(1, Math.min(model.height, chunk / model.width));
+        this.pool = Math.max(capacity, 1) + 2;
+        this.queue = new ArrayBlockingQueue<Frame>(pool + 1);
+        this.free = new ArrayBlockingQueue<Frame>(pool);
+
+        out.writeInt(magic);
+        out.writeInt(version);
+        out.writeInt(model.height);
+        out.writeInt(model.width);
+        out.writeInt(this.interval);
+        out.writeInt(this.keyframes);
+        out.writeInt(lines);
+        position = 28;
+
+        this.capturer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                capture();
+            }
+        });
+        this.encoder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                encode();
+            }
+        });
+        capturer.setDaemon(true);
+        encoder.setDaemon(true);
+    }
+
+    // May come before the executor starts, recording goes on until close()
+    public void start() {
+        encoder.start();
+        if (overflow == Overflow.BLOCK) {
+            capturer.start();
+            return;
+        }
+        final long next = executor.listen(new BandScheduler.Listener() {
+            @Override
+            public void published(long generation, int line, int count) {
+                publish(generation, line, count);
+            }
+        });
+        first = (next + interval - 1) / interval * interval;
+    }
+
+    public long recorded() {
+        return recorded.get();
+    }
+
+    // Frames lost to a full queue or pool
+    public long dropped() {
+        return dropped.get();
+    }
+
+    // Generations already overwritten when their turn came, e.g. the capture thread fell behind
+    public long missed() {
+        return missed.get();
+    }
+
+    private Frame allocate() {
+        final Frame frame = free.poll();
+        if (frame != null) return frame;
+        if (allocated.incrementAndGet() > pool) {
+            allocated.decrementAndGet();
+            return null;
+        }
+        final byte[][] chunks = new byte[(model.height + lines - 1) / lines][];
+        for (int c = 0; c < chunks.length; ++c) {
+            chunks[c] = new byte[Math.min(lines, model.height - c * lines) * model.width];
+        }
+        return new Frame(chunks);
+    }
+
+    // Line h of the frame, copied from the given model line
+    private void copy(Frame frame, int line, int h) {
+        model.snapshotLine(line, frame.chunks[h / lines], (h % lines) * model.width);
+    }
+
+    // DROP, on the worker that published the band: its lines and the halo lines it refreshed are
+    // final for the generation. The last band to come queues the frame
+    private void publish(long generation, int line, int count) {
+        if ((generation < first) || (generation % interval != 0)) return;
+        Frame frame = filling.get(generation);
+        if (frame == null) {
+            Frame fresh = allocate();
+            if (fresh == null) fresh = new Frame(null); // the generation is dropped, only counted down
+            fresh.generation = generation;
+            fresh.pending.set(model.height);
+            frame = filling.putIfAbsent(generation, fresh);
+            if (frame == null) {
+                frame = fresh;
+            } else if (fresh.chunks != null) {
+                free.offer(fresh);
+            }
+        }
+
+        final int top = line - line % model.height;
+        int copied = 0;
+        for (int i = line; i < line + count; ++i) {
+            if (!model.body(i)) continue;
+            if (frame.chunks != null) copy(frame, i, i - top);
+            ++copied;
+        }
+        for (int k = 0; k < 2 * model.edge; ++k) {
+            final int target = model.haloLine(top, k);
+            if (!model.refreshes(line, count, target)) continue;
+            if (frame.chunks != null) copy(frame, target, target - top);
+            ++copied;
+        }
+        if (frame.pending.addAndGet(-copied) > 0) return;
+
+        filling.remove(generation);
+        if (frame.chunks == null) {
+            dropped.incrementAndGet();
+        } else if (!queue.offer(frame)) {
+            dropped.incrementAndGet();
+            free.offer(frame);
+        }
+    }
+
+    // BLOCK only
+    private void capture() {
+        long next = (executor.generation() / interval + 1) * interval;
+        boolean reserved = false; // next held already, it is reserved before queueing
+
+        while (running) {
+            if (!reserved && !executor.reserve(next)) {
+                missed.incrementAndGet();
+                next += interval;
+                continue;
+            }
+            reserved = false;
+            while (running && (executor.generation() < next)) LockSupport.parkNanos(poll);
+            if (executor.generation() < next) {
+                executor.release(next);
+                break;
+            }
+
+            Frame frame = allocate();
+            try {
+                while ((frame == null) && encoder.isAlive()) frame = free.poll(poll, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            if (frame == null) {
+                executor.release(next);
+                break;
+            }
+            // The frame stays pinned until queued, compute can't run past it meanwhile, and the
+            // next one is held first so that compute can't skip it once this one goes
+            try (FrameHandle handle = executor.pinned(next)) {
+                for (int h = 0; h < model.height; ++h) copy(frame, handle.line + h, h);
+                frame.generation = next;
+                reserved = executor.reserve(next + interval);
+                if (!put(frame)) {
+                    dropped.incrementAndGet();
+                    free.offer(frame);
+                }
+            }
+            next += interval;
+        }
+        if (reserved) executor.release(next);
+    }
+
+    // Waits for room as long as the encoder lives
+    private boolean put(Frame frame) {
+        try {
+            while (encoder.isAlive()) {
+                if (queue.offer(frame, poll, TimeUnit.NANOSECONDS)) return true;
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    private void encode() {
+        byte[][] previous = null;
+        final ByteArrayOutputStream runs = new ByteArrayOutputStream();
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        byte[] packed = new byte[1 << 16];
+        long count = 0;
+
+        try {
+            while (true) {
+                final Frame frame = queue.take();
+                if (frame == end) break;
+                final boolean key = (count++ % keyframes == 0);
+                if (previous == null) {
+                    previous = new byte[frame.chunks.length][];
+                    for (int c = 0; c < previous.length; ++c) previous[c] = new byte[frame.chunks[c].length];
+                }
+
+                begin(frame.generation, key, frame.chunks.length);
+                for (int c = 0; c < frame.chunks.length; ++c) {
+                    final byte[] cells = frame.chunks[c];
+                    final byte[] delta = previous[c];
+                    for (int i = 0; i < cells.length; ++i) {
+                        delta[i] = (byte)(key ? cells[i] : cells[i] ^ delta[i]);
+                    }
+
+                    runs.reset();
+                    rle(delta, runs);
+                    System.arraycopy(cells, 0, delta, 0, cells.length);
+                    deflater.reset();
+                    deflater.setInput(runs.toByteArray());
+                    deflater.finish();
+                    int length = 0;
+                    while (!deflater.finished()) {
+                        if (length == packed.length) packed = Arrays.copyOf(packed, packed.length << 1);
+                        length += deflater.deflate(packed, length, packed.length - length);
+                    }
+                    out.writeInt(length);
+                    out.write(packed, 0, length);
+                    position += 4 + length;
+                }
+                free.offer(frame);
+                recorded.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        } catch (IOException e) {
+            failure = e;
+            running = false;
+            queue.clear();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // Record header, (length, deflated runs) per chunk follow
+    private void begin(long generation, boolean key, int chunks) throws IOException {
+        if ((records + 1) * 3 > index.length) index = Arrays.copyOf(index, index.length << 1);
+        index[records * 3] = generation;
+        index[records * 3 + 1] = position;
+        index[records * 3 + 2] = (key ? 1 : 0);
+        ++records;
+
+        out.writeLong(generation);
+        out.writeBoolean(key);
+        out.writeInt(chunks);
+        position += 8 + 1 + 4;
+    }
+
+    // Pairs of (zero run, literal run) lengths as varints, literals follow their lengths
+    static void rle(byte[] data, ByteArrayOutputStream out) {
+        int i = 0;
+        while (i < data.length) {
+            final int zeros = i;
+            while ((i < data.length) && (data[i] == 0)) ++i;
+            final int literals = i;
+            while ((i < data.length) && (data[i] != 0)) ++i;
+            varint(literals - zeros, out);
+            varint(i - literals, out);
+            out.write(data, literals, i - literals);
+        }
+    }
+
+    private static void varint(int value, ByteArrayOutputStream out) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    // Stops capturing, encodes what is queued and writes the index
+    @Override
+    public void close() throws IOException {
+        running = false;
+        try {
+            if (overflow == Overflow.BLOCK) {
+                capturer.join();
+            } else {
+                executor.listen(null);
+            }
+            put(end);
+            encoder.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+
+        try {
+            if (failure != null) throw failure;
+            final long start = position;
+            out.writeInt(records);
+            for (int r = 0; r < records; ++r) {
+                out.writeLong(index[r * 3]);
+                out.writeLong(index[r * 3 + 1]);
+                out.writeBoolean(index[r * 3 + 2] != 0);
+            }
+            out.writeLong(start);
+            out.writeInt(magic);
+        } finally {
+            out.close();
+        }
+    }
+}
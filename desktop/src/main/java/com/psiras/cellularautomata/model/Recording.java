@@ -0,0 +1,154 @@
+package com.psiras.cellularautomata.model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// Reads a file written by Recorder: a header (height, width, interval, keyframes, lines per
+// chunk), records of (generation, key, chunks, then length and deflated runs per chunk) and an
+// index at the end, found through the footer. A frame is decoded from the nearest keyframe
+// before it, or from the last frame read when reading forward. Frames too large for an array
+// are read line by line after seek()
+public class Recording implements Closeable {
+    private final RandomAccessFile file;
+    public final int height;
+    public final int width;
+    public final int interval;
+    public final int keyframes;
+    public final int lines; // per chunk
+    private final long[] generations;
+    private final long[] offsets;
+    private final boolean[] keys;
+    private final byte[][] current; // chunks of the decoded frame
+    private int decoded = -1; // record held in current
+
+    public Recording(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        if ((this.file.readInt() != Recorder.magic) || (this.file.readInt() != Recorder.version)) {
+            throw new IOException("Not a recording");
+        }
+        this.height = this.file.readInt();
+        this.width = this.file.readInt();
+        this.interval = this.file.readInt();
+        this.keyframes = this.file.readInt();
+        this.lines = this.file.readInt();
+        this.current = new byte[(height + lines - 1) / lines][];
+        for (int c = 0; c < current.length; ++c) current[c] = new byte[Math.min(lines, height - c * lines) * width];
+
+        this.file.seek(this.file.length() - 12);
+        final long start = this.file.readLong();
+        if (this.file.readInt() != Recorder.magic) throw new IOException("Recording not closed");
+        this.file.seek(start);
+        final int records = this.file.readInt();
+        this.generations = new long[records];
+        this.offsets = new long[records];
+        this.keys = new boolean[records];
+
+        for (int r = 0; r < records; ++r) {
+            generations[r] = this.file.readLong();
+            offsets[r] = this.file.readLong();
+            keys[r] = this.file.readBoolean();
+        }
+    }
+
+    public int frames() {
+        return generations.length;
+    }
+
+    public long generation(int frame) {
+        return generations[frame];
+    }
+
+    // Recorded frame of the generation into a height * width buffer
+    public byte[] read(long generation, byte[] buff) throws IOException {
+        seek(generation);
+        int offset = 0;
+        for (byte[] chunk : current) {
+            System.arraycopy(chunk, 0, buff, offset, chunk.length);
+            offset += chunk.length;
+        }
+        return buff;
+    }
+
+    // Line h of the frame last read or sought into a width buffer
+    public byte[] line(int h, byte[] buff) {
+        System.arraycopy(current[h / lines], (h % lines) * width, buff, 0, width);
+        return buff;
+    }
+
+    // Decodes the recorded frame of the generation, see line()
+    public void seek(long generation) throws IOException {
+        final int frame = Arrays.binarySearch(generations, generation);
+        if (frame < 0) throw new IllegalArgumentException("Generation not recorded: " + generation);
+
+        int first = frame;
+        while (!keys[first]) --first;
+        if ((decoded >= first) && (decoded <= frame)) first = decoded + 1;
+
+        for (int r = first; r <= frame; ++r) {
+            apply(r);
+            decoded = r;
+        }
+    }
+
+    private void apply(int record) throws IOException {
+        file.seek(offsets[record] + 9);
+        if (file.readInt() != current.length) throw new IOException("Record doesn't match the frame");
+        for (byte[] chunk : current) apply(chunk, keys[record]);
+    }
+
+    private void apply(byte[] chunk, boolean key) throws IOException {
+        final byte[] packed = new byte[file.readInt()];
+        file.readFully(packed);
+
+        final Inflater inflater = new Inflater();
+        byte[] runs = new byte[Math.max(packed.length << 2, 64)];
+        int length = 0;
+        try {
+            inflater.setInput(packed);
+            while (!inflater.finished()) {
+                if (length == runs.length) runs = Arrays.copyOf(runs, runs.length << 1);
+                final int count = inflater.inflate(runs, length, runs.length - length);
+                if ((count == 0) && inflater.needsInput()) throw new IOException("Truncated record");
+                length += count;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+
+        if (key) Arrays.fill(chunk, (byte)0);
+        int i = 0;
+        int pos = 0;
+        final int[] read = new int[1];
+        while (pos < length) {
+            pos = varint(runs, pos, read);
+            i += read[0];
+            pos = varint(runs, pos, read);
+            for (int k = 0; k < read[0]; ++k) chunk[i++] ^= runs[pos++];
+        }
+    }
+
+    private static int varint(byte[] data, int pos, int[] value) {
+        int result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[pos++];
+            result |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        value[0] = result;
+        return pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
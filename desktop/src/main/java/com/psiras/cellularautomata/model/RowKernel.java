@@ -0,0 +1,66 @@
+package com.psiras.cellularautomata.model;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Computes interior cells [from, to) of a line, src and dst point at the line starts in memory.
+// Templates ship a scalar kernel, faster ones (e.g. SIMD built for a newer JDK) are picked up
+// from the classpath through ServiceLoader, unless -Dcellularautomata.vector=false
+public interface RowKernel {
+    void computeRow(int src, int dst, int from, int to);
+
+    interface Factory {
+        // Null when the model isn't supported
+        RowKernel create(CellularModel model, RowKernel scalar);
+    }
+
+    static RowKernel lookup(CellularModel model, RowKernel scalar) {
+        if (Boolean.parseBoolean(System.getProperty("cellularautomata.vector", "true"))) {
+            for (Factory factory : Factories.list) try {
+                final RowKernel kernel = factory.create(model, scalar);
+                if (kernel != null) return kernel;
+            } catch (LinkageError e) { // e.g. jdk.incubator.vector not added, reported once as the factory goes
+                if (Factories.list.remove(factory)) System.err.println(factory.getClass().getName() + " dropped: " + e);
+            }
+        }
+        return scalar;
+    }
+
+    class Factories {
+        private static final List<Factory> list = new CopyOnWriteArrayList<>();
+        private static boolean reported = false;
+
+        // A provider failing to load is skipped, a configuration failing to be read ends the lookup
+        static {
+            final Iterator<Factory> iterator = ServiceLoader.load(Factory.class).iterator();
+            while (more(iterator)) try {
+                list.add(iterator.next());
+            } catch (ServiceConfigurationError | LinkageError e) {
+                report(e);
+            }
+        }
+
+        private static boolean more(Iterator<Factory> iterator) {
+            try {
+                return iterator.hasNext();
+            } catch (ServiceConfigurationError | LinkageError e) {
+                report(e);
+                return false;
+            }
+        }
+
+        // One line for the first error only, the scalar kernels work regardless
+        private static void report(Throwable e) {
+            if (reported) return;
+            reported = true;
+            System.err.println("Row kernel providers skipped: " + e.getMessage());
+        }
+
+        // Do not instantiate
+        private Factories() {
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.psiras.cellularautomata.model;
+
+// A rule of few states driven by a weighted neighbourhood sum, compiled into a table indexed by
+// (state, sum). Sums span what neighbourhoods of states [0, states) and walls add up to, other
+// states or sums (e.g. noise not yet run through the rule, fixed halos) ask the rule itself.
+// Built once, then every cell costs the sum and a single array load
+public class RuleTable {
+    private final Rule rule;
+    private final byte[] table;
+    private final int[] weights;
+    public final int states;
+    public final int edge;
+    public final int low; // least sum in the table
+    public final int span; // sums in the table
+
+    public interface Rule {
+        byte next(byte state, int sum);
+    }
+
+    // Weights of the (2 * edge + 1)^2 neighbourhood row by row, the centre included
+    public RuleTable(int states, int edge, int[] weights, Rule rule) {
+        final int len = (edge << 1) + 1;
+        if (weights.length != len * len) throw new IllegalArgumentException("Weights don't fit edge");
+        int low = 0;
+        int high = 0;
+
+        for (int weight : weights) {
+            low += Math.min(weight * CellularModel.wall, weight * (states - 1));
+            high += Math.max(weight * CellularModel.wall, weight * (states - 1));
+        }
+        this.rule = rule;
+        this.weights = weights.clone();
+        this.states = states;
+        this.edge = edge;
+        this.low = low;
+        this.span = high - low + 1;
+        this.table = new byte[states * span];
+
+        for (int state = 0; state < states; ++state) {
+            for (int sum = low; sum <= high; ++sum) {
+                table[state * span + sum - low] = rule.next((byte)state, sum);
+            }
+        }
+    }
+
+    public int weight(int dh, int dw) {
+        return weights[(dh + edge) * ((edge << 1) + 1) + dw + edge];
+    }
+
+    public byte next(byte state, int sum) {
+        final int index = sum - low;
+        // one test for 0 <= state < states and 0 <= index < span, signs of all four or'ed
+        if ((state | (states - 1 - state) | index | (span - 1 - index)) < 0) return rule.next(state, sum);
+        return table[state * span + index];
+    }
+
+    // Row kernel of a byte model, the neighbourhood read through offsets of its non-zero weights
+    public RowKernel kernel(CellularModel model) {
+        final byte[] memory = model.memory;
+        final int width = model.width;
+        final int len = (edge << 1) + 1;
+        int taps = 0;
+
+        for (int weight : weights) {
+            if (weight != 0) ++taps;
+        }
+        final int[] offsets = new int[taps];
+        final int[] factors = new int[taps];
+        for (int i = 0, t = 0; i < weights.length; ++i) {
+            if (weights[i] == 0) continue;
+            offsets[t] = (i / len - edge) * width + i % len - edge;
+            factors[t++] = weights[i];
+        }
+
+        return new RowKernel() {
+            @Override
+            public void computeRow(int src, int dst, int from, int to) {
+                for (int w = from; w < to; ++w) {
+                    final int pos = src + w;
+                    int sum = 0;
+
+                    for (int t = 0; t < offsets.length; ++t) {
+                        sum += memory[pos + offsets[t]] * factors[t];
+                    }
+                    memory[dst + w] = next(memory[pos], sum);
+                }
+            }
+        };
+    }
+}
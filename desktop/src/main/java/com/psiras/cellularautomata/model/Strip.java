@@ -0,0 +1,119 @@
+package com.psiras.cellularautomata.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// A horizontal strip of a model too large for one process. Rows [edge, height - edge) of the
+// whole model are split among the strips; the strip model holds its own rows plus edge halo
+// lines on either side. Every generation the boundary lines are calculated first and sent to
+// the neighbours, the interior is calculated while they travel, and the neighbours' boundary
+// lines arrive as the new halo. Halo lines at the top or bottom of the whole model follow its
+// boundary, calculated as usual. Wrapping would take a ring of links, so it isn't supported
+public class Strip {
+    public final CellularModel model;
+    public final int first; // row of the whole model the first owned line is
+    public final int rows; // owned lines
+    private final int edge;
+    private final Link upper; // null at the top
+    private final Link lower; // null at the bottom
+    private long generation;
+    private boolean started = false; // halos exchanged once before the first generation
+
+    // The model is height rows + 2 * edge tall, initialized at offset first - edge
+    public Strip(CellularModel model, int first, Link upper, Link lower) {
+        this.model = model;
+        this.first = first;
+        this.edge = model.edge;
+        this.rows = model.height - 2 * edge;
+        this.upper = upper;
+        this.lower = lower;
+        this.generation = 0;
+        if (rows < Math.max(edge, 1)) throw new IllegalArgumentException("Strip thinner than its edge");
+        if (model.wraps()) throw new IllegalArgumentException("Strips don't wrap around");
+    }
+
+    // First owned row of strip index out of count in a height tall model, count gives the end
+    public static int first(int height, int edge, int count, int index) {
+        final int rows = height - 2 * edge;
+        return edge + (int)((long)rows * index / count);
+    }
+
+    // Bytes a Link moves per generation
+    public static int block(CellularModel model) {
+        return model.edge * model.lineBytes();
+    }
+
+    public long generation() {
+        return generation;
+    }
+
+    // First line of the frame holding the given generation
+    private int base(long generation) {
+        return (int)(generation % model.frames) * model.height;
+    }
+
+    public void step() throws IOException {
+        final long next = generation + 1;
+        final int base = base(next);
+        final int bottom = model.height - 2 * edge; // first line the lower neighbour needs
+        if (!started) start(base(generation), bottom);
+
+        if (rows <= 2 * edge) {
+            model.calculate(base + edge, rows);
+        } else {
+            model.calculate(base + edge, edge);
+            model.calculate(base + bottom, edge);
+        }
+        if (upper != null) upper.send(save(base + edge));
+        if (lower != null) lower.send(save(base + bottom));
+        if (rows > 2 * edge) model.calculate(base + 2 * edge, rows - 2 * edge);
+
+        if (upper == null) halo(base); else load(base, upper.receive());
+        if (lower == null) halo(base + bottom + edge); else load(base + bottom + edge, lower.receive());
+        this.generation = next;
+    }
+
+    // Halo lines as initialized needn't match the neighbours, e.g. where a model clears its walls
+    private void start(int base, int bottom) throws IOException {
+        if (upper != null) upper.send(save(base + edge));
+        if (lower != null) lower.send(save(base + bottom));
+        if (upper != null) load(base, upper.receive());
+        if (lower != null) load(base + bottom + edge, lower.receive());
+        this.started = true;
+    }
+
+    // Halo lines at the top or bottom of the whole model, once every owned line is calculated
+    private void halo(int line) {
+        for (int i = 0; i < edge; ++i) model.calculate(line + i);
+    }
+
+    private ByteBuffer save(int line) {
+        final ByteBuffer buff = ByteBuffer.allocate(block(model));
+        for (int i = 0; i < edge; ++i) model.save(line + i, buff);
+        buff.flip();
+        return buff;
+    }
+
+    private void load(int line, ByteBuffer buff) {
+        for (int i = 0; i < edge; ++i) model.load(line + i, buff);
+    }
+
+    // FNV-1a of the saved state of the owned lines, comparable to hash() of the whole model
+    public long hash() {
+        return hash(model, base(generation) + edge, rows);
+    }
+
+    public static long hash(CellularModel model, int line, int count) {
+        final ByteBuffer buff = ByteBuffer.allocate(model.lineBytes());
+        long hash = 0xcbf29ce484222325L;
+
+        for (int i = line; i < line + count; ++i) {
+            buff.clear();
+            model.save(i, buff);
+            for (int j = 0; j < buff.position(); ++j) {
+                hash = (hash ^ (buff.get(j) & 0xff)) * 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+}
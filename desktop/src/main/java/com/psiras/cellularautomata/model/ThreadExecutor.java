@@ -1,5 +1,7 @@
 package com.psiras.cellularautomata.model;
 
+import java.util.concurrent.Executor;
+
 public class ThreadExecutor extends AbstractExecutor {
     private final Runnable loop;
 
@@ -8,6 +10,11 @@ public class ThreadExecutor extends AbstractExecutor {
         this.loop = loop;
     }
 
+    public ThreadExecutor(Runnable loop, int numthreads, Executor pool) {
+        super(numthreads, pool);
+        this.loop = loop;
+    }
+
     @Override
     public void run() {
         loop.run();
@@ -0,0 +1,263 @@
+package com.psiras.cellularautomata.rule;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Writes the class file of a public final class with a constructor and one public method, of
+// the instructions RuleCompiler needs. Version 49, so no stack map frames are due. Code is
+// appended instruction by instruction, each telling how it changes the operand stack
+final class Assembler {
+    static final int ICONST_0 = 0x03;
+    static final int FCONST_0 = 0x0b;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int ILOAD = 0x15;
+    static final int FLOAD = 0x17;
+    static final int ALOAD = 0x19;
+    static final int FALOAD = 0x30;
+    static final int BALOAD = 0x33;
+    static final int ISTORE = 0x36;
+    static final int FSTORE = 0x38;
+    static final int FASTORE = 0x51;
+    static final int BASTORE = 0x54;
+    static final int POP2 = 0x58;
+    static final int DUP = 0x59;
+    static final int IADD = 0x60;
+    static final int FADD = 0x62;
+    static final int ISUB = 0x64;
+    static final int FSUB = 0x66;
+    static final int IMUL = 0x68;
+    static final int FMUL = 0x6a;
+    static final int IDIV = 0x6c;
+    static final int FDIV = 0x6e;
+    static final int IREM = 0x70;
+    static final int FREM = 0x72;
+    static final int INEG = 0x74;
+    static final int FNEG = 0x76;
+    static final int IINC = 0x84;
+    static final int I2F = 0x86;
+    static final int F2I = 0x8b;
+    static final int I2B = 0x91;
+    static final int FCMPL = 0x95;
+    static final int FCMPG = 0x96;
+    static final int IFEQ = 0x99; // then IFNE, IFLT, IFGE, IFGT, IFLE
+    static final int IFNE = 0x9a;
+    static final int IF_ICMPEQ = 0x9f; // then IF_ICMPNE, IF_ICMPLT, IF_ICMPGE, IF_ICMPGT, IF_ICMPLE
+    static final int GOTO = 0xa7;
+    static final int RETURN = 0xb1;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    private static final int ALOAD_0 = 0x2a;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream constants = new DataOutputStream(pool);
+    private final Map<String, Integer> entries = new HashMap<String, Integer>();
+    private int count = 1; // constants, index 0 unused
+    private byte[] code = new byte[1024];
+    private int size = 0;
+    private int depth = 0;
+    private int maxStack = 0;
+    private final List<Integer> labels = new ArrayList<Integer>(); // code position, -1 until bound
+    private final List<int[]> jumps = new ArrayList<int[]>(); // instruction position and label
+
+    // Opposite of a conditional jump, e.g. IFLT for IFGE
+    static int negate(int opcode) {
+        final int base = (opcode < IF_ICMPEQ ? IFEQ : IF_ICMPEQ);
+        return base + ((opcode - base) ^ 1);
+    }
+
+    // Constants a constant refers to are added before it
+    private int constant(String key, int tag, Object value) {
+        final Integer known = entries.get(key);
+        if (known != null) return known;
+        try {
+            constants.writeByte(tag);
+            switch (tag) {
+                case 1: constants.writeUTF((String)value); break;
+                case 3: constants.writeInt((Integer)value); break;
+                case 4: constants.writeFloat((Float)value); break;
+                case 7: constants.writeShort((Integer)value); break;
+                default: constants.writeShort(((int[])value)[0]); constants.writeShort(((int[])value)[1]);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        entries.put(key, count);
+        return count++;
+    }
+
+    int utf8(String value) {
+        return constant("U" + value, 1, value);
+    }
+
+    int type(String name) {
+        final int named = utf8(name);
+        return constant("C" + name, 7, named);
+    }
+
+    int method(String owner, String name, String descriptor) {
+        final int owned = type(owner);
+        final int typed = constant("N" + name + descriptor, 12, new int[] {utf8(name), utf8(descriptor)});
+        return constant("M" + owner + "." + name + descriptor, 10, new int[] {owned, typed});
+    }
+
+    private void emit(int value) {
+        if (size == code.length) code = Arrays.copyOf(code, size << 1);
+        code[size++] = (byte)value;
+    }
+
+    private void stack(int delta) {
+        depth += delta;
+        maxStack = Math.max(maxStack, depth);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int depth() {
+        return depth;
+    }
+
+    // Where a jump lands the stack is as deep as it was when jumping
+    void depth(int depth) {
+        this.depth = depth;
+    }
+
+    void op(int opcode, int delta) {
+        emit(opcode);
+        stack(delta);
+    }
+
+    // Loads and stores of locals below 256
+    void local(int opcode, int index, int delta) {
+        emit(opcode);
+        emit(index);
+        stack(delta);
+    }
+
+    void iinc(int index, int increment) {
+        emit(IINC);
+        emit(index);
+        emit(increment);
+    }
+
+    void invokestatic(String owner, String name, String descriptor, int delta) {
+        final int index = method(owner, name, descriptor);
+        emit(INVOKESTATIC);
+        emit(index >> 8);
+        emit(index);
+        stack(delta);
+    }
+
+    void push(int value) {
+        if ((value >= -1) && (value <= 5)) {
+            op(ICONST_0 + value, 1);
+        } else if (value == (byte)value) {
+            local(BIPUSH, value & 0xff, 1);
+        } else if (value == (short)value) {
+            emit(SIPUSH);
+            emit(value >> 8);
+            emit(value);
+            stack(1);
+        } else {
+            load(constant("I" + value, 3, value));
+        }
+    }
+
+    void push(float value) {
+        final int bits = Float.floatToIntBits(value);
+        if ((bits == Float.floatToIntBits(0.0f)) || (bits == Float.floatToIntBits(1.0f)) || (bits == Float.floatToIntBits(2.0f))) {
+            op(FCONST_0 + (int)value, 1);
+        } else {
+            load(constant("F" + bits, 4, value));
+        }
+    }
+
+    private void load(int index) {
+        emit(LDC_W);
+        emit(index >> 8);
+        emit(index);
+        stack(1);
+    }
+
+    int label() {
+        labels.add(-1);
+        return labels.size() - 1;
+    }
+
+    void bind(int label) {
+        labels.set(label, size);
+    }
+
+    // Conditional jumps pop what they compare, delta -1 or -2, GOTO pops nothing
+    void jump(int opcode, int label, int delta) {
+        jumps.add(new int[] {size, label});
+        emit(opcode);
+        emit(0);
+        emit(0);
+        stack(delta);
+    }
+
+    // The class, name with dots, implementing one interface by a method of the code appended
+    byte[] toClass(String name, String implemented, String method, String descriptor, int locals) {
+        for (int[] jump : jumps) {
+            final int offset = labels.get(jump[1]) - jump[0];
+            if (offset != (short)offset) throw new UnsupportedOperationException("Method too large");
+            code[jump[0] + 1] = (byte)(offset >> 8);
+            code[jump[0] + 2] = (byte)offset;
+        }
+        final int self = type(name.replace('.', '/'));
+        final int parent = type("java/lang/Object");
+        final int implementing = type(implemented);
+        final int init = method("java/lang/Object", "<init>", "()V");
+        final int body = utf8("Code");
+        final int[] names = {utf8("<init>"), utf8(method)};
+        final int[] descriptors = {utf8("()V"), utf8(descriptor)};
+        final byte[] constructor = {ALOAD_0, (byte)INVOKESPECIAL, (byte)(init >> 8), (byte)init, (byte)RETURN};
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(count);
+            constants.flush();
+            pool.writeTo(out);
+            out.writeShort(0x31); // public final super
+            out.writeShort(self);
+            out.writeShort(parent);
+            out.writeShort(1);
+            out.writeShort(implementing);
+            out.writeShort(0); // fields
+            out.writeShort(2);
+            for (int m = 0; m < 2; ++m) {
+                final byte[] instructions = (m == 0 ? constructor : Arrays.copyOf(code, size));
+                out.writeShort(0x01); // public
+                out.writeShort(names[m]);
+                out.writeShort(descriptors[m]);
+                out.writeShort(1);
+                out.writeShort(body);
+                out.writeInt(12 + instructions.length);
+                out.writeShort(m == 0 ? 1 : maxStack);
+                out.writeShort(m == 0 ? 1 : locals);
+                out.writeInt(instructions.length);
+                out.write(instructions);
+                out.writeShort(0); // exceptions
+                out.writeShort(0); // attributes
+            }
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,326 @@
+package com.psiras.cellularautomata.rule;
+
+// Expressions of a Rule, typed INT, FLOAT or BOOL as Java would type them: an int meeting a float
+// turns float, conditions only steer ?:, && and ||. Every node evaluates itself for the
+// interpreter, RuleCompiler turns the same tree into bytecode
+public abstract class Expr {
+    public enum Type {INT, FLOAT, BOOL}
+    public final Type type;
+
+    Expr(Type type) {
+        this.type = type;
+    }
+
+    int ival(Cell cell) {
+        return (int)fval(cell);
+    }
+
+    float fval(Cell cell) {
+        return ival(cell);
+    }
+
+    boolean test(Cell cell) {
+        throw new IllegalStateException("Not a condition");
+    }
+
+    static Type wider(Expr a, Expr b) {
+        return (a.type == Type.FLOAT) || (b.type == Type.FLOAT) ? Type.FLOAT : Type.INT;
+    }
+
+    // The cell being calculated and the layout of its model, see RuleInterpreter
+    static final class Cell {
+        byte[] memory;
+        float[] floats;
+        int pos; // of the cell in memory
+        int fpos; // of channel 0 of the cell in floats
+        final int plane; // floats between channels
+        final int[][] offsets; // of the taps of every Sum
+        final int[] ints; // lets
+        final float[] reals;
+
+        Cell(int plane, int[][] offsets, int lets) {
+            this.plane = plane;
+            this.offsets = offsets;
+            this.ints = new int[lets];
+            this.reals = new float[lets];
+        }
+    }
+
+    static final class Num extends Expr {
+        final int i;
+        final float f;
+
+        Num(int value) {
+            super(Type.INT);
+            this.i = value;
+            this.f = value;
+        }
+
+        Num(float value) {
+            super(Type.FLOAT);
+            this.i = (int)value;
+            this.f = value;
+        }
+
+        @Override
+        int ival(Cell cell) {
+            return i;
+        }
+
+        @Override
+        float fval(Cell cell) {
+            return f;
+        }
+    }
+
+    // State of the cell itself
+    static final class State extends Expr {
+        State() {
+            super(Type.INT);
+        }
+
+        @Override
+        int ival(Cell cell) {
+            return cell.memory[cell.pos];
+        }
+    }
+
+    // Channel of the cell itself
+    static final class Channel extends Expr {
+        final int channel;
+
+        Channel(int channel) {
+            super(Type.FLOAT);
+            this.channel = channel;
+        }
+
+        @Override
+        float fval(Cell cell) {
+            return cell.floats[cell.fpos + channel * cell.plane];
+        }
+    }
+
+    static final class Let extends Expr {
+        final int slot;
+
+        Let(int slot, Type type) {
+            super(type);
+            this.slot = slot;
+        }
+
+        @Override
+        int ival(Cell cell) {
+            return (type == Type.INT ? cell.ints[slot] : (int)cell.reals[slot]);
+        }
+
+        @Override
+        float fval(Cell cell) {
+            return (type == Type.INT ? cell.ints[slot] : cell.reals[slot]);
+        }
+    }
+
+    // Weighted sum over the taps of a kernel around the cell, of the state (channel -1) or of
+    // a channel, taps in order. Offsets of the taps depend on the model width, see Cell
+    static final class Sum extends Expr {
+        final Rule.Kernel kernel;
+        final int channel;
+        final int id; // among the sums of the rule
+
+        Sum(Rule.Kernel kernel, int channel, int id) {
+            super(kernel.real || (channel >= 0) ? Type.FLOAT : Type.INT);
+            this.kernel = kernel;
+            this.channel = channel;
+            this.id = id;
+        }
+
+        @Override
+        int ival(Cell cell) {
+            if (type == Type.FLOAT) return (int)fval(cell);
+            final int[] offsets = cell.offsets[id];
+            int sum = 0;
+            for (int t = 0; t < offsets.length; ++t) sum += cell.memory[cell.pos + offsets[t]] * kernel.ints[t];
+            return sum;
+        }
+
+        @Override
+        float fval(Cell cell) {
+            if (type == Type.INT) return ival(cell);
+            final int[] offsets = cell.offsets[id];
+            final int base = cell.fpos + channel * cell.plane;
+            float sum = 0;
+            for (int t = 0; t < offsets.length; ++t) {
+                sum += (channel < 0 ? cell.memory[cell.pos + offsets[t]] : cell.floats[base + offsets[t]]) * kernel.reals[t];
+            }
+            return sum;
+        }
+    }
+
+    static final class Unary extends Expr {
+        final char op; // '-' or '!'
+        final Expr arg;
+
+        Unary(char op, Expr arg) {
+            super(op == '!' ? Type.BOOL : arg.type);
+            this.op = op;
+            this.arg = arg;
+        }
+
+        @Override
+        int ival(Cell cell) {
+            return (type == Type.INT ? -arg.ival(cell) : (int)fval(cell));
+        }
+
+        @Override
+        float fval(Cell cell) {
+            return (type == Type.INT ? ival(cell) : -arg.fval(cell));
+        }
+
+        @Override
+        boolean test(Cell cell) {
+            return !arg.test(cell);
+        }
+    }
+
+    // Arithmetic + - * / %, comparisons < <= > >= == != and logic && ||
+    static final class Binary extends Expr {
+        final String op;
+        final Expr left;
+        final Expr right;
+        final Type operands;
+
+        Binary(String op, Expr left, Expr right) {
+            super(logic(op) || comparison(op) ? Type.BOOL : wider(left, right));
+            this.op = op;
+            this.left = left;
+            this.right = right;
+            this.operands = (logic(op) ? Type.BOOL : wider(left, right));
+        }
+
+        static boolean comparison(String op) {
+            switch (op) {
+                case "<": case "<=": case ">": case ">=": case "==": case "!=": return true;
+                default: return false;
+            }
+        }
+
+        static boolean logic(String op) {
+            return op.equals("&&") || op.equals("||");
+        }
+
+        @Override
+        int ival(Cell cell) {
+            if (type == Type.FLOAT) return (int)fval(cell);
+            final int a = left.ival(cell);
+            final int b = right.ival(cell);
+            switch (op) {
+                case "+": return a + b;
+                case "-": return a - b;
+                case "*": return a * b;
+                case "/": return (b == 0 ? 0 : a / b);
+                default: return (b == 0 ? 0 : a % b);
+            }
+        }
+
+        @Override
+        float fval(Cell cell) {
+            if (type == Type.INT) return ival(cell);
+            final float a = left.fval(cell);
+            final float b = right.fval(cell);
+            switch (op) {
+                case "+": return a + b;
+                case "-": return a - b;
+                case "*": return a * b;
+                case "/": return a / b;
+                default: return a % b;
+            }
+        }
+
+        @Override
+        boolean test(Cell cell) {
+            if (op.equals("&&")) return left.test(cell) && right.test(cell);
+            if (op.equals("||")) return left.test(cell) || right.test(cell);
+            if (operands == Type.INT) {
+                final int a = left.ival(cell);
+                final int b = right.ival(cell);
+                switch (op) {
+                    case "<": return a < b;
+                    case "<=": return a <= b;
+                    case ">": return a > b;
+                    case ">=": return a >= b;
+                    case "==": return a == b;
+                    default: return a != b;
+                }
+            }
+            final float a = left.fval(cell);
+            final float b = right.fval(cell);
+            switch (op) {
+                case "<": return a < b;
+                case "<=": return a <= b;
+                case ">": return a > b;
+                case ">=": return a >= b;
+                case "==": return a == b;
+                default: return a != b;
+            }
+        }
+    }
+
+    static final class Cond extends Expr {
+        final Expr test;
+        final Expr yes;
+        final Expr no;
+
+        Cond(Expr test, Expr yes, Expr no) {
+            super(wider(yes, no));
+            this.test = test;
+            this.yes = yes;
+            this.no = no;
+        }
+
+        @Override
+        int ival(Cell cell) {
+            if (type == Type.FLOAT) return (int)fval(cell);
+            return (test.test(cell) ? yes : no).ival(cell);
+        }
+
+        @Override
+        float fval(Cell cell) {
+            return (test.test(cell) ? yes : no).fval(cell);
+        }
+    }
+
+    // min, max, abs, clamp(x, low, high) = max(low, min(high, x)), int and float conversions
+    static final class Call extends Expr {
+        final String name;
+        final Expr[] args;
+
+        Call(String name, Type type, Expr... args) {
+            super(type);
+            this.name = name;
+            this.args = args;
+        }
+
+        @Override
+        int ival(Cell cell) {
+            if (type == Type.FLOAT) return (int)fval(cell);
+            switch (name) {
+                case "min": return Math.min(args[0].ival(cell), args[1].ival(cell));
+                case "max": return Math.max(args[0].ival(cell), args[1].ival(cell));
+                case "abs": return Math.abs(args[0].ival(cell));
+                case "clamp": return Math.max(args[1].ival(cell), Math.min(args[2].ival(cell), args[0].ival(cell)));
+                default: return args[0].ival(cell); // int()
+            }
+        }
+
+        @Override
+        float fval(Cell cell) {
+            if (type == Type.INT) return ival(cell);
+            switch (name) {
+                case "min": return Math.min(args[0].fval(cell), args[1].fval(cell));
+                case "max": return Math.max(args[0].fval(cell), args[1].fval(cell));
+                case "abs": return Math.abs(args[0].fval(cell));
+                case "clamp": return Math.max(args[1].fval(cell), Math.min(args[2].fval(cell), args[0].fval(cell)));
+                default: return args[0].fval(cell);
+            }
+        }
+    }
+}
@@ -0,0 +1,490 @@
+package com.psiras.cellularautomata.rule;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// A rule written out rather than coded, one statement per line, # comments, \ continues a line:
+//   param alpha = 3.0                     a named constant
+//   kernel box = 1 1 1 / 1 0 1 / 1 1 1    weights of a square neighbourhood, rows split by /
+//   channel a b c                         float channels next to the state, as in ChannelField
+//   states 10                             initial states drawn from [0, 10) instead of [0, 127]
+//   let x = box(state) / 8                a value of the cell, used further down
+//   state = x < 2 ? 0 : 1                 the next state, or a channel: a = min(a + 0.1, 1)
+// Expressions are typed as Java would type them, ints and floats with + - * / %, comparisons,
+// && || ! and ?: with min, max, abs, clamp(x, low, high), int() and float(). An int divided by
+// zero, or its remainder, is 0 rather than an error in the middle of a run. state and channel
+// names stand for the cell itself, a kernel applied to either for its weighted neighbourhood.
+// Outputs not assigned keep the cell as it is. Models run a rule through RuleModel
+public class Rule {
+    public final String name;
+    public final int edge;
+    public final int states; // 0 when not given
+    public final List<String> channels;
+    final Expr[] lets;
+    final Expr state; // null when not assigned
+    final Expr[] outputs; // per channel, null when not assigned
+    final List<Expr.Sum> sums;
+    private final Map<Long, RuleKernel> kernels = new ConcurrentHashMap<Long, RuleKernel>();
+
+    // Non-zero weights of a kernel as taps, row by row
+    static final class Kernel {
+        final int edge;
+        final int[] dh;
+        final int[] dw;
+        final int[] ints;
+        final float[] reals;
+        final boolean real; // some weight isn't an int
+
+        Kernel(int edge, List<Expr.Num> weights) {
+            final int len = (edge << 1) + 1;
+            int taps = 0;
+            boolean real = false;
+
+            for (Expr.Num weight : weights) {
+                if (weight.f != 0) ++taps;
+                if (weight.type == Expr.Type.FLOAT) real = true;
+            }
+            this.edge = edge;
+            this.real = real;
+            this.dh = new int[taps];
+            this.dw = new int[taps];
+            this.ints = new int[taps];
+            this.reals = new float[taps];
+            for (int i = 0, t = 0; i < weights.size(); ++i) {
+                if (weights.get(i).f == 0) continue;
+                dh[t] = i / len - edge;
+                dw[t] = i % len - edge;
+                ints[t] = weights.get(i).i;
+                reals[t++] = weights.get(i).f;
+            }
+        }
+
+        // Offsets of the taps in a model width cells wide
+        int[] offsets(int width) {
+            final int[] offsets = new int[dh.length];
+            for (int t = 0; t < offsets.length; ++t) offsets[t] = dh[t] * width + dw[t];
+            return offsets;
+        }
+    }
+
+    private Rule(Parser parser) {
+        this.name = parser.name;
+        this.edge = parser.edge;
+        this.states = parser.states;
+        this.channels = Collections.unmodifiableList(parser.channels);
+        this.lets = parser.lets.toArray(new Expr[0]);
+        this.state = parser.state;
+        this.outputs = parser.outputs.toArray(new Expr[0]);
+        this.sums = parser.sums;
+    }
+
+    public static Rule parse(String name, Reader reader) throws IOException {
+        return new Rule(new Parser(name).parse(reader));
+    }
+
+    public static Rule parse(String name, String text) {
+        try {
+            return parse(name, new StringReader(text));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // From a file, or failing that from the rules shipped in the classpath under /rules
+    public static Rule load(String path) throws IOException {
+        final File file = new File(path);
+        if (file.isFile()) try (Reader reader = new FileReader(file)) {
+            return parse(file.getName(), reader);
+        }
+        final InputStream in = Rule.class.getResourceAsStream("/rules/" + path);
+        if (in == null) throw new IOException("No such rule: " + path);
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return parse(path, reader);
+        }
+    }
+
+    // Row kernel for models of the given width and channel plane, compiled once per layout
+    public RuleKernel kernel(int width, int plane) {
+        final Long key = ((long)width << 32) | (plane & 0xffffffffL);
+        RuleKernel kernel = kernels.get(key);
+        if (kernel == null) {
+            kernel = RuleCompiler.compile(this, width, plane);
+            final RuleKernel other = kernels.putIfAbsent(key, kernel);
+            if (other != null) kernel = other;
+        }
+        return kernel;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static final class Parser {
+        private static final List<String> reserved = Arrays.asList(
+                "param", "kernel", "channel", "states", "let", "min", "max", "abs", "clamp", "int", "float");
+        private static final List<String> operators = Arrays.asList("<=", ">=", "==", "!=", "&&", "||");
+        final String name;
+        int edge = 1;
+        int states = 0;
+        final List<String> channels = new ArrayList<String>();
+        final List<Expr> lets = new ArrayList<Expr>();
+        final List<Expr> outputs = new ArrayList<Expr>();
+        final List<Expr.Sum> sums = new ArrayList<Expr.Sum>();
+        Expr state = null;
+        private final Map<String, Object> scope = new HashMap<String, Object>(); // Expr or Kernel
+        private List<String> tokens;
+        private int next;
+        private int line; // the statement starts on
+
+        Parser(String name) {
+            this.name = name;
+            scope.put("state", new Expr.State());
+        }
+
+        Parser parse(Reader reader) throws IOException {
+            final BufferedReader lines = new BufferedReader(reader);
+            String statement = "";
+            int first = 1;
+            int number = 0;
+
+            for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+                ++number;
+                final int hash = line.indexOf('#');
+                line = (hash < 0 ? line : line.substring(0, hash)).trim();
+                if (line.endsWith("\\")) {
+                    statement += line.substring(0, line.length() - 1) + " ";
+                    continue;
+                }
+                statement += line;
+                if (!statement.trim().isEmpty()) statement(statement, first);
+                statement = "";
+                first = number + 1;
+            }
+            if (!statement.trim().isEmpty()) statement(statement, first);
+            return this;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(name + ":" + line + ": " + message);
+        }
+
+        private void statement(String text, int line) {
+            this.tokens = tokenize(text);
+            this.next = 0;
+            this.line = line;
+            final String head = take();
+
+            switch (head) {
+                case "param": {
+                    final String param = declare(take());
+                    expect("=");
+                    final Expr value = expression();
+                    if (!(value instanceof Expr.Num)) throw error("Param isn't a number: " + param);
+                    scope.put(param, value);
+                    break;
+                }
+                case "kernel": {
+                    final String kernel = declare(take());
+                    expect("=");
+                    scope.put(kernel, kernel());
+                    break;
+                }
+                case "channel": {
+                    do {
+                        final String channel = declare(take());
+                        scope.put(channel, new Expr.Channel(channels.size()));
+                        channels.add(channel);
+                        outputs.add(null);
+                    } while (next < tokens.size());
+                    break;
+                }
+                case "states": {
+                    final Expr value = expression();
+                    if (!(value instanceof Expr.Num) || (value.type != Expr.Type.INT)) throw error("States aren't an int");
+                    states = ((Expr.Num)value).i;
+                    if ((states < 1) || (states > 128)) throw error("States out of [1, 128]");
+                    break;
+                }
+                case "let": {
+                    final String let = declare(take());
+                    expect("=");
+                    final Expr value = value();
+                    lets.add(value);
+                    scope.put(let, new Expr.Let(lets.size() - 1, value.type));
+                    break;
+                }
+                default: {
+                    expect("=");
+                    final Expr value = value();
+                    final Object target = scope.get(head);
+                    if (head.equals("state")) {
+                        if (state != null) throw error("State assigned twice");
+                        state = value;
+                    } else if (target instanceof Expr.Channel) {
+                        final int channel = ((Expr.Channel)target).channel;
+                        if (outputs.get(channel) != null) throw error("Channel assigned twice: " + head);
+                        outputs.set(channel, value);
+                    } else {
+                        throw error("Neither state nor a channel: " + head);
+                    }
+                }
+            }
+            if (next < tokens.size()) throw error("Unexpected " + tokens.get(next));
+        }
+
+        private String declare(String name) {
+            if (!Character.isJavaIdentifierStart(name.charAt(0))) throw error("Not a name: " + name);
+            if (scope.containsKey(name) || reserved.contains(name)) {
+                throw error("Name taken: " + name);
+            }
+            return name;
+        }
+
+        // Rows of numbers split by /, a square of odd side
+        private Rule.Kernel kernel() {
+            final List<Expr.Num> weights = new ArrayList<Expr.Num>();
+            int rows = 1;
+            while (next < tokens.size()) {
+                if (peek("/")) {
+                    take();
+                    ++rows;
+                    continue;
+                }
+                final Expr weight = unary();
+                if (!(weight instanceof Expr.Num)) throw error("Weight isn't a number");
+                weights.add((Expr.Num)weight);
+            }
+            if (((rows & 1) == 0) || (weights.size() != rows * rows)) throw error("Kernel isn't an odd square");
+            edge = Math.max(edge, rows >> 1);
+            return new Rule.Kernel(rows >> 1, weights);
+        }
+
+        private static List<String> tokenize(String text) {
+            final List<String> tokens = new ArrayList<String>();
+            int i = 0;
+            while (i < text.length()) {
+                final char c = text.charAt(i);
+                int end = i + 1;
+                if (Character.isWhitespace(c)) {
+                    ++i;
+                    continue;
+                } else if (Character.isJavaIdentifierStart(c)) {
+                    while ((end < text.length()) && Character.isJavaIdentifierPart(text.charAt(end))) ++end;
+                } else if (Character.isDigit(c) || (c == '.')) {
+                    while ((end < text.length()) && (Character.isDigit(text.charAt(end)) || (text.charAt(end) == '.'))) ++end;
+                    if ((end < text.length()) && ((text.charAt(end) | 0x20) == 'e')) {
+                        ++end;
+                        if ((end < text.length()) && ((text.charAt(end) == '-') || (text.charAt(end) == '+'))) ++end;
+                        while ((end < text.length()) && Character.isDigit(text.charAt(end))) ++end;
+                    }
+                } else if ((end < text.length()) && operators.contains(text.substring(i, end + 1))) {
+                    ++end;
+                }
+                tokens.add(text.substring(i, end));
+                i = end;
+            }
+            return tokens;
+        }
+
+        private String take() {
+            if (next >= tokens.size()) throw error("Unexpected end of line");
+            return tokens.get(next++);
+        }
+
+        private boolean peek(String token) {
+            return (next < tokens.size()) && tokens.get(next).equals(token);
+        }
+
+        private void expect(String token) {
+            final String found = take();
+            if (!found.equals(token)) throw error("Expected " + token + " instead of " + found);
+        }
+
+        // An expression giving a number, not a condition
+        private Expr value() {
+            final Expr value = expression();
+            if (value.type == Expr.Type.BOOL) throw error("Condition where a number is due");
+            return value;
+        }
+
+        private Expr expression() {
+            final Expr test = or();
+            if (!peek("?")) return test;
+            if (test.type != Expr.Type.BOOL) throw error("Number where a condition is due");
+            take();
+            final Expr yes = value();
+            expect(":");
+            final Expr no = expression();
+            if (no.type == Expr.Type.BOOL) throw error("Condition where a number is due");
+            return new Expr.Cond(test, yes, no);
+        }
+
+        private Expr or() {
+            Expr left = and();
+            while (peek("||")) {
+                take();
+                left = logic("||", left, and());
+            }
+            return left;
+        }
+
+        private Expr and() {
+            Expr left = comparison();
+            while (peek("&&")) {
+                take();
+                left = logic("&&", left, comparison());
+            }
+            return left;
+        }
+
+        private Expr logic(String op, Expr left, Expr right) {
+            if ((left.type != Expr.Type.BOOL) || (right.type != Expr.Type.BOOL)) throw error("Number where a condition is due");
+            return new Expr.Binary(op, left, right);
+        }
+
+        private Expr comparison() {
+            final Expr left = sum();
+            if ((next >= tokens.size()) || !Expr.Binary.comparison(tokens.get(next))) return left;
+            return arithmetic(take(), left, sum());
+        }
+
+        private Expr sum() {
+            Expr left = product();
+            while (peek("+") || peek("-")) left = arithmetic(take(), left, product());
+            return left;
+        }
+
+        private Expr product() {
+            Expr left = unary();
+            while (peek("*") || peek("/") || peek("%")) left = arithmetic(take(), left, unary());
+            return left;
+        }
+
+        private Expr arithmetic(String op, Expr left, Expr right) {
+            if ((left.type == Expr.Type.BOOL) || (right.type == Expr.Type.BOOL)) throw error("Condition where a number is due");
+            if (op.equals("/") || op.equals("%")) {
+                if ((right instanceof Expr.Num) && (right.type == Expr.Type.INT) && (((Expr.Num)right).i == 0)
+                        && (Expr.wider(left, right) == Expr.Type.INT)) {
+                    throw error("Division by zero");
+                }
+            }
+            return fold(new Expr.Binary(op, left, right));
+        }
+
+        private Expr unary() {
+            if (peek("-")) {
+                take();
+                final Expr arg = unary();
+                if (arg.type == Expr.Type.BOOL) throw error("Condition where a number is due");
+                return fold(new Expr.Unary('-', arg));
+            }
+            if (peek("!")) {
+                take();
+                final Expr arg = unary();
+                if (arg.type != Expr.Type.BOOL) throw error("Number where a condition is due");
+                return new Expr.Unary('!', arg);
+            }
+            return primary();
+        }
+
+        private Expr primary() {
+            final String token = take();
+            final char c = token.charAt(0);
+
+            if (token.equals("(")) {
+                final Expr inner = expression();
+                expect(")");
+                return inner;
+            }
+            if (Character.isDigit(c) || (c == '.')) try {
+                if ((token.indexOf('.') < 0) && (token.indexOf('e') < 0) && (token.indexOf('E') < 0)) {
+                    return new Expr.Num(Integer.parseInt(token));
+                }
+                return new Expr.Num(Float.parseFloat(token));
+            } catch (NumberFormatException e) {
+                throw error("Not a number: " + token);
+            }
+            if (!Character.isJavaIdentifierStart(c)) throw error("Unexpected " + token);
+            if (peek("(")) return call(token);
+
+            final Object known = scope.get(token);
+            if (known instanceof Expr) return (Expr)known;
+            if (known instanceof Rule.Kernel) throw error("Kernel applied to nothing: " + token);
+            throw error("Unknown name: " + token);
+        }
+
+        private Expr call(String function) {
+            expect("(");
+            final List<Expr> args = new ArrayList<Expr>();
+            if (!peek(")")) do {
+                if (!args.isEmpty()) take();
+                args.add(scope.get(function) instanceof Rule.Kernel ? argument() : value());
+            } while (peek(","));
+            expect(")");
+
+            final Object kernel = scope.get(function);
+            if (kernel instanceof Rule.Kernel) {
+                if (args.size() != 1) throw error("Kernel applied to " + args.size() + " arguments: " + function);
+                final Expr source = args.get(0);
+                final Expr.Sum sum = new Expr.Sum((Rule.Kernel)kernel,
+                        source instanceof Expr.Channel ? ((Expr.Channel)source).channel : -1, sums.size());
+                sums.add(sum);
+                return sum;
+            }
+
+            final int arity;
+            switch (function) {
+                case "min": case "max": arity = 2; break;
+                case "clamp": arity = 3; break;
+                case "abs": case "int": case "float": arity = 1; break;
+                default: throw error("Unknown function: " + function);
+            }
+            if (args.size() != arity) throw error(function + " takes " + arity + " arguments");
+
+            Expr.Type type = args.get(0).type;
+            for (Expr arg : args) type = (arg.type == Expr.Type.FLOAT ? Expr.Type.FLOAT : type);
+            if (function.equals("int")) type = Expr.Type.INT;
+            if (function.equals("float")) type = Expr.Type.FLOAT;
+            return fold(new Expr.Call(function, type, args.toArray(new Expr[0])));
+        }
+
+        // What a kernel sums up, the state or a channel
+        private Expr argument() {
+            final String token = take();
+            final Object source = scope.get(token);
+            if (!(source instanceof Expr.State) && !(source instanceof Expr.Channel)) {
+                throw error("Kernels sum up the state or a channel, not " + token);
+            }
+            return (Expr)source;
+        }
+
+        // Numbers only, worked out as the cells would
+        private static Expr fold(Expr expr) {
+            if (expr.type == Expr.Type.BOOL) return expr;
+            if (expr instanceof Expr.Binary) {
+                final Expr.Binary binary = (Expr.Binary)expr;
+                if (!(binary.left instanceof Expr.Num) || !(binary.right instanceof Expr.Num)) return expr;
+            } else if (expr instanceof Expr.Unary) {
+                if (!(((Expr.Unary)expr).arg instanceof Expr.Num)) return expr;
+            } else if (expr instanceof Expr.Call) {
+                for (Expr arg : ((Expr.Call)expr).args) if (!(arg instanceof Expr.Num)) return expr;
+            }
+            return (expr.type == Expr.Type.INT ? new Expr.Num(expr.ival(null)) : new Expr.Num(expr.fval(null)));
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.psiras.cellularautomata.rule;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Turns a Rule into a RuleKernel class of its own for one model width and plane: the loop over
+// the row as straight bytecode, taps unrolled with their offsets and weights as constants,
+// lets in locals, no calls but to Math. One implementation per call site keeps it monomorphic
+// and the JIT inlines all of it. Bytecode is written by Assembler rather than through method
+// handles, which Android lacks; where no class can be defined the rule is interpreted instead,
+// as it is when the method would grow past what HotSpot compiles (8000 bytes)
+final class RuleCompiler {
+    private static final String kernel = "com/psiras/cellularautomata/rule/RuleKernel";
+    private static final String descriptor = "([B[FIIIIII)V";
+    private static final String math = "java/lang/Math";
+    private static final int limit = 8000;
+    private static final AtomicInteger serial = new AtomicInteger();
+    private static final AtomicBoolean failed = new AtomicBoolean(); // reported once, e.g. every layout on Android
+    // Locals of computeRow, arguments first
+    private static final int MEMORY = 1;
+    private static final int FLOATS = 2;
+    private static final int SRC = 3;
+    private static final int DST = 4;
+    private static final int FSRC = 5;
+    private static final int FDST = 6;
+    private static final int FROM = 7;
+    private static final int TO = 8;
+    private static final int W = 9;
+    private static final int POS = 10;
+    private static final int FPOS = 11;
+    private static final int LETS = 12;
+
+    private final Rule rule;
+    private final int width;
+    private final int plane;
+    private final Assembler asm = new Assembler();
+
+    private RuleCompiler(Rule rule, int width, int plane) {
+        this.rule = rule;
+        this.width = width;
+        this.plane = plane;
+    }
+
+    static RuleKernel compile(Rule rule, int width, int plane) {
+        if (Boolean.parseBoolean(System.getProperty("cellularautomata.compile", "true"))) try {
+            final String name = "com.psiras.cellularautomata.rule.Compiled" + serial.incrementAndGet();
+            final byte[] bytes = new RuleCompiler(rule, width, plane).assemble(name);
+            if (bytes != null) return (RuleKernel)new Loader().define(name, bytes).newInstance();
+        } catch (UnsupportedOperationException | LinkageError | SecurityException | ReflectiveOperationException e) {
+            if (!failed.getAndSet(true)) e.printStackTrace();
+        }
+        return new RuleInterpreter(rule, width, plane);
+    }
+
+    // A loader per class, so that classes of rules no longer used can go
+    private static final class Loader extends ClassLoader {
+        Loader() {
+            super(RuleKernel.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    // Null when too large to be worth it
+    private byte[] assemble(String name) {
+        if (LETS + rule.lets.length > 255) return null;
+        final int top = asm.label();
+        final int end = asm.label();
+
+        asm.local(Assembler.ILOAD, FROM, 1);
+        asm.local(Assembler.ISTORE, W, -1);
+        asm.bind(top);
+        asm.local(Assembler.ILOAD, W, 1);
+        asm.local(Assembler.ILOAD, TO, 1);
+        asm.jump(Assembler.negate(compare("<")), end, -2);
+        index(SRC, POS);
+        if (!rule.channels.isEmpty()) index(FSRC, FPOS);
+
+        for (int i = 0; i < rule.lets.length; ++i) {
+            final Expr let = rule.lets[i];
+            value(let, let.type);
+            asm.local(let.type == Expr.Type.INT ? Assembler.ISTORE : Assembler.FSTORE, LETS + i, -1);
+        }
+        for (int c = 0; c < rule.outputs.length; ++c) {
+            asm.local(Assembler.ALOAD, FLOATS, 1);
+            index(FDST, -1);
+            offset(c * plane);
+            if (rule.outputs[c] == null) channel(c, 0); else value(rule.outputs[c], Expr.Type.FLOAT);
+            asm.op(Assembler.FASTORE, -3);
+        }
+        asm.local(Assembler.ALOAD, MEMORY, 1);
+        index(DST, -1);
+        if (rule.state == null) {
+            state(0);
+        } else {
+            value(rule.state, Expr.Type.INT);
+            asm.op(Assembler.I2B, 0);
+        }
+        asm.op(Assembler.BASTORE, -3);
+        asm.iinc(W, 1);
+        asm.jump(Assembler.GOTO, top, 0);
+        asm.bind(end);
+        asm.op(Assembler.RETURN, 0);
+
+        if (asm.size() > limit) return null;
+        return asm.toClass(name, kernel, "computeRow", descriptor, LETS + rule.lets.length);
+    }
+
+    // Start of a line plus w, stored in a local or left on the stack (local -1)
+    private void index(int start, int local) {
+        asm.local(Assembler.ILOAD, start, 1);
+        asm.local(Assembler.ILOAD, W, 1);
+        asm.op(Assembler.IADD, -1);
+        if (local >= 0) asm.local(Assembler.ISTORE, local, -1);
+    }
+
+    private void offset(int offset) {
+        if (offset == 0) return;
+        asm.push(offset);
+        asm.op(Assembler.IADD, -1);
+    }
+
+    // State of the cell at an offset from the current one, as an int
+    private void state(int offset) {
+        asm.local(Assembler.ALOAD, MEMORY, 1);
+        asm.local(Assembler.ILOAD, POS, 1);
+        offset(offset);
+        asm.op(Assembler.BALOAD, -1);
+    }
+
+    private void channel(int channel, int offset) {
+        asm.local(Assembler.ALOAD, FLOATS, 1);
+        asm.local(Assembler.ILOAD, FPOS, 1);
+        offset(channel * plane + offset);
+        asm.op(Assembler.FALOAD, -1);
+    }
+
+    // Jump on an int comparison being true
+    private static int compare(String op) {
+        switch (op) {
+            case "==": return Assembler.IF_ICMPEQ;
+            case "!=": return Assembler.IF_ICMPEQ + 1;
+            case "<": return Assembler.IF_ICMPEQ + 2;
+            case ">=": return Assembler.IF_ICMPEQ + 3;
+            case ">": return Assembler.IF_ICMPEQ + 4;
+            default: return Assembler.IF_ICMPEQ + 5;
+        }
+    }
+
+    private void convert(Expr.Type from, Expr.Type to) {
+        if ((from == Expr.Type.INT) && (to == Expr.Type.FLOAT)) asm.op(Assembler.I2F, 0);
+        if ((from == Expr.Type.FLOAT) && (to == Expr.Type.INT)) asm.op(Assembler.F2I, 0);
+    }
+
+    private void value(Expr expr, Expr.Type type) {
+        emit(expr);
+        convert(expr.type, type);
+    }
+
+    // Leaves the value of a number expression on the stack, typed as the expression
+    private void emit(Expr expr) {
+        final boolean real = (expr.type == Expr.Type.FLOAT);
+
+        if (expr instanceof Expr.Num) {
+            if (real) asm.push(((Expr.Num)expr).f); else asm.push(((Expr.Num)expr).i);
+        } else if (expr instanceof Expr.State) {
+            state(0);
+        } else if (expr instanceof Expr.Channel) {
+            channel(((Expr.Channel)expr).channel, 0);
+        } else if (expr instanceof Expr.Let) {
+            asm.local(real ? Assembler.FLOAD : Assembler.ILOAD, LETS + ((Expr.Let)expr).slot, 1);
+        } else if (expr instanceof Expr.Sum) {
+            sum((Expr.Sum)expr);
+        } else if (expr instanceof Expr.Unary) {
+            value(((Expr.Unary)expr).arg, expr.type);
+            asm.op(real ? Assembler.FNEG : Assembler.INEG, 0);
+        } else if (expr instanceof Expr.Binary) {
+            final Expr.Binary binary = (Expr.Binary)expr;
+            value(binary.left, expr.type);
+            value(binary.right, expr.type);
+            switch (binary.op) {
+                case "+": asm.op(real ? Assembler.FADD : Assembler.IADD, -1); break;
+                case "-": asm.op(real ? Assembler.FSUB : Assembler.ISUB, -1); break;
+                case "*": asm.op(real ? Assembler.FMUL : Assembler.IMUL, -1); break;
+                case "/": if (real) asm.op(Assembler.FDIV, -1); else divide(Assembler.IDIV); break;
+                default: if (real) asm.op(Assembler.FREM, -1); else divide(Assembler.IREM);
+            }
+        } else if (expr instanceof Expr.Cond) {
+            final Expr.Cond cond = (Expr.Cond)expr;
+            final int no = asm.label();
+            final int end = asm.label();
+            branch(cond.test, false, no);
+            final int depth = asm.depth();
+            value(cond.yes, expr.type);
+            asm.jump(Assembler.GOTO, end, 0);
+            asm.depth(depth);
+            asm.bind(no);
+            value(cond.no, expr.type);
+            asm.bind(end);
+        } else {
+            call((Expr.Call)expr);
+        }
+    }
+
+    // Int division or remainder of the two ints on the stack, 0 by zero as Expr.Binary has it
+    private void divide(int opcode) {
+        final int divide = asm.label();
+        final int end = asm.label();
+        asm.op(Assembler.DUP, 1);
+        asm.jump(Assembler.IFNE, divide, -1);
+        asm.op(Assembler.POP2, -2);
+        asm.push(0);
+        asm.jump(Assembler.GOTO, end, 0);
+        asm.depth(asm.depth() + 1);
+        asm.bind(divide);
+        asm.op(opcode, -1);
+        asm.bind(end);
+    }
+
+    // Taps in the order of the kernel, a weight of 1 doesn't multiply
+    private void sum(Expr.Sum sum) {
+        final boolean real = (sum.type == Expr.Type.FLOAT);
+        final int[] offsets = sum.kernel.offsets(width);
+
+        if (real) asm.push(0.0f); else asm.push(0);
+        for (int t = 0; t < offsets.length; ++t) {
+            if (sum.channel < 0) {
+                state(offsets[t]);
+                if (real) asm.op(Assembler.I2F, 0);
+            } else {
+                channel(sum.channel, offsets[t]);
+            }
+            if (real && (sum.kernel.reals[t] != 1.0f)) {
+                asm.push(sum.kernel.reals[t]);
+                asm.op(Assembler.FMUL, -1);
+            } else if (!real && (sum.kernel.ints[t] != 1)) {
+                asm.push(sum.kernel.ints[t]);
+                asm.op(Assembler.IMUL, -1);
+            }
+            asm.op(real ? Assembler.FADD : Assembler.IADD, -1);
+        }
+    }
+
+    private void call(Expr.Call call) {
+        final boolean real = (call.type == Expr.Type.FLOAT);
+        final String one = (real ? "(F)F" : "(I)I");
+        final String two = (real ? "(FF)F" : "(II)I");
+
+        switch (call.name) {
+            case "min":
+            case "max":
+                value(call.args[0], call.type);
+                value(call.args[1], call.type);
+                asm.invokestatic(math, call.name, two, -1);
+                break;
+            case "abs":
+                value(call.args[0], call.type);
+                asm.invokestatic(math, "abs", one, 0);
+                break;
+            case "clamp":
+                value(call.args[1], call.type);
+                value(call.args[2], call.type);
+                value(call.args[0], call.type);
+                asm.invokestatic(math, "min", two, -1);
+                asm.invokestatic(math, "max", two, -1);
+                break;
+            default: // int() or float()
+                value(call.args[0], call.type);
+        }
+    }
+
+    // Jumps to the label when the condition is as sensed, falls through otherwise
+    private void branch(Expr test, boolean sense, int label) {
+        if (test instanceof Expr.Unary) {
+            branch(((Expr.Unary)test).arg, !sense, label);
+            return;
+        }
+        final Expr.Binary binary = (Expr.Binary)test;
+        if (Expr.Binary.logic(binary.op)) {
+            // a && b jumps on false as soon as either is false, on true when both are
+            if (binary.op.equals("&&") != sense) {
+                branch(binary.left, sense, label);
+                branch(binary.right, sense, label);
+            } else {
+                final int skip = asm.label();
+                branch(binary.left, !sense, skip);
+                branch(binary.right, sense, label);
+                asm.bind(skip);
+            }
+            return;
+        }
+
+        value(binary.left, binary.operands);
+        value(binary.right, binary.operands);
+        int opcode = compare(binary.op);
+        if (binary.operands == Expr.Type.FLOAT) {
+            // NaN compares false, as in Java: fcmpg makes it greater for < and <=, fcmpl less
+            final boolean below = binary.op.startsWith("<");
+            asm.op(below ? Assembler.FCMPG : Assembler.FCMPL, -1);
+            opcode += Assembler.IFEQ - Assembler.IF_ICMPEQ;
+        }
+        if (!sense) opcode = Assembler.negate(opcode);
+        asm.jump(opcode, label, opcode < Assembler.IF_ICMPEQ ? -1 : -2);
+    }
+}
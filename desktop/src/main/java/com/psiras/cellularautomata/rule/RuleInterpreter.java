@@ -0,0 +1,37 @@
+package com.psiras.cellularautomata.rule;
+
+// Walks the expressions of a Rule cell by cell, where classes can't be compiled at runtime
+// (e.g. Android) or with -Dcellularautomata.compile=false. Results match the compiled kernel
+class RuleInterpreter implements RuleKernel {
+    private final Rule rule;
+    private final int plane;
+    private final int[][] offsets;
+
+    RuleInterpreter(Rule rule, int width, int plane) {
+        this.rule = rule;
+        this.plane = plane;
+        this.offsets = new int[rule.sums.size()][];
+        for (Expr.Sum sum : rule.sums) offsets[sum.id] = sum.kernel.offsets(width);
+    }
+
+    @Override
+    public void computeRow(byte[] memory, float[] floats, int src, int dst, int fsrc, int fdst, int from, int to) {
+        final Expr.Cell cell = new Expr.Cell(plane, offsets, rule.lets.length);
+        cell.memory = memory;
+        cell.floats = floats;
+
+        for (int w = from; w < to; ++w) {
+            cell.pos = src + w;
+            cell.fpos = fsrc + w;
+            for (int i = 0; i < rule.lets.length; ++i) {
+                if (rule.lets[i].type == Expr.Type.INT) cell.ints[i] = rule.lets[i].ival(cell);
+                else cell.reals[i] = rule.lets[i].fval(cell);
+            }
+            for (int c = 0; c < rule.outputs.length; ++c) {
+                final int index = fdst + c * plane + w;
+                floats[index] = (rule.outputs[c] == null ? floats[fsrc + c * plane + w] : rule.outputs[c].fval(cell));
+            }
+            memory[dst + w] = (rule.state == null ? memory[src + w] : (byte)rule.state.ival(cell));
+        }
+    }
+}
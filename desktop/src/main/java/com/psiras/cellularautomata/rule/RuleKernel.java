@@ -0,0 +1,7 @@
+package com.psiras.cellularautomata.rule;
+
+// Computes cells [from, to) of a line for a Rule, src and dst point at the line starts in memory,
+// fsrc and fdst at channel 0 of the lines in floats. Compiled for one model width and plane
+public interface RuleKernel {
+    void computeRow(byte[] memory, float[] floats, int src, int dst, int fsrc, int fdst, int from, int to);
+}
@@ -0,0 +1,101 @@
+package com.psiras.cellularautomata.rule;
+
+import com.psiras.cellularautomata.model.CellularModel;
+import com.psiras.cellularautomata.model.ChannelField;
+import com.psiras.cellularautomata.model.Initializer;
+import com.psiras.cellularautomata.utils.SplitMix;
+
+import java.nio.ByteBuffer;
+
+// A model running a Rule, its channels in a float ChannelField. Rows go through the kernel
+// compiled for the rule and this layout, shared by every model of the same rule and size
+public class RuleModel extends CellularModel {
+    public final Rule rule;
+    public final ChannelField field; // null without channels
+    private final float[] floats;
+    private final RuleKernel kernel;
+
+    public RuleModel(Rule rule, int height, int width) {
+        super(height, width, rule.edge);
+        this.rule = rule;
+        this.field = (rule.channels.isEmpty() ? null
+                : new ChannelField(height, width, rule.channels.size(), 2, ChannelField.Precision.FLOAT));
+        this.floats = (field == null ? null : field.floats);
+        this.kernel = rule.kernel(width, height * width);
+    }
+
+    // States drawn from [0, states) when the rule gives them, channels as NeighborTemplate does
+    @Override
+    protected void initialize(int h, Initializer init, SplitMix random) {
+        if (rule.states == 0) {
+            super.initialize(h, init, random);
+        } else {
+            final int row = h * width;
+            for (int w = 0; w < width; ++w) {
+                memory[row + w] = (byte)Math.min((int)(init.value(h, w, random) * rule.states), rule.states - 1);
+            }
+        }
+        if (field == null) return;
+        final int row = field.offset(h);
+
+        for (int w = 0; w < width; ++w) {
+            for (int c = 0; c < field.channels; ++c) {
+                field.set(row + c * field.plane + w, init.value(h, w, random));
+            }
+        }
+        field.spread(h); // filled halo cells are never stepped, keep them alike in every frame
+    }
+
+    @Override
+    public int lineBytes() {
+        return super.lineBytes() + (field == null ? 0 : field.lineBytes());
+    }
+
+    @Override
+    public void save(int line, ByteBuffer out) {
+        super.save(line, out);
+        if (field != null) field.save(line, out);
+    }
+
+    @Override
+    public void load(int line, ByteBuffer in) {
+        super.load(line, in);
+        if (field == null) return;
+        field.load(line, in);
+        field.spread(line);
+    }
+
+    @Override
+    protected void move(int line, int from, int to) {
+        super.move(line, from, to);
+        if (field != null) field.move(line, from, to);
+    }
+
+    @Override
+    protected void copy(int from, int to, int count) {
+        super.copy(from, to, count);
+        if (field != null) for (int i = 0; i < count; ++i) field.copy(from + i, to + i);
+    }
+
+    // Channels change where the state doesn't, only a rule of the state alone can settle
+    @Override
+    public boolean settled(int line, int count) {
+        return (field == null) && unchanged(line, count);
+    }
+
+    // Channels of the cell are written to the next frame as a side effect, as a row would
+    @Override
+    protected byte get(int pos) {
+        final int line = pos / width;
+        final int w = pos % width;
+        computeRow(line * width, frame(line, 1) * width, w, w + 1);
+        return memory[frame(line, 1) * width + w];
+    }
+
+    @Override
+    protected void computeRow(int src, int dst, int from, int to) {
+        final int fsrc = (field == null ? 0 : field.offset(src / width));
+        final int fdst = (field == null ? 0 : field.offset(dst / width));
+        kernel.computeRow(memory, floats, src, dst, fsrc, fdst, from, to);
+    }
+}
@@ -1,11 +1,15 @@
 package com.psiras.cellularautomata.template;
 
 import com.psiras.cellularautomata.model.CellularModel;
+import com.psiras.cellularautomata.model.RowKernel;
+import com.psiras.cellularautomata.model.RuleTable;
 
 public class IllnessTemplate extends CellularModel {
-    private static final int range = 10;
+    public static final int range = 10;
     private static final int edge = 1;
     private static final byte[] mask;
+    static final RuleTable table; // get() compiled, shared by every model
+    private final RowKernel kernel;
 
     static {
         final float sigma = (float) (edge + 1) / 2;
@@ -21,16 +25,23 @@ public class IllnessTemplate extends CellularModel {
             }
         }
         mask[edge * len + edge] = 0;
+
+        final int[] weights = new int[len * len];
+        for (int i = 0; i < weights.length; ++i) weights[i] = mask[i];
+        table = new RuleTable(range, edge, weights, (state, neighbours) -> (state == range - 1 ? 0 : transition(state, neighbours)));
     }
 
     public IllnessTemplate(int height, int width) {
         super(height, width, edge);
+        this.kernel = RowKernel.lookup(this, table.kernel(this));
+    }
+
+    public static int weight(int dh, int dw) {
+        return mask[(dh + edge) * ((edge << 1) + 1) + dw + edge];
     }
 
     @Override
     protected byte get(int pos) {
-        if (memory[pos] == wall) return wall;
-
         if (memory[pos] == range - 1) {
             return 0;
         } else {
@@ -43,18 +54,31 @@ public class IllnessTemplate extends CellularModel {
                     neighbours += memory[src + dh * width + dw] * mask[dh * len + dw];
                 }
             }
+            return transition(memory[pos], neighbours);
+        }
+    }
 
-            if (memory[pos] == 0) {
-                if (neighbours < 5) {
-                    return 0;
-                } else if (neighbours < range * ((edge << 1) + 1) * ((edge << 1) + 1)) {
-                    return 2;
-                } else {
-                    return 3;
-                }
+    static byte transition(byte state, int neighbours) {
+        if (state == 0) {
+            if (neighbours < 5) {
+                return 0;
+            } else if (neighbours < range * ((edge << 1) + 1) * ((edge << 1) + 1)) {
+                return 2;
             } else {
-                return (byte)Math.min(neighbours / 8 + 5, range - 1);
+                return 3;
             }
+        } else {
+            return (byte)Math.min(neighbours / 8 + 5, range - 1);
         }
     }
+
+    @Override
+    public boolean settled(int line, int count) {
+        return unchanged(line, count);
+    }
+
+    @Override
+    protected void computeRow(int src, int dst, int from, int to) {
+        kernel.computeRow(src, dst, from, to);
+    }
 }
@@ -0,0 +1,44 @@
+package com.psiras.cellularautomata.template;
+
+import com.psiras.cellularautomata.model.ConvolutionModel;
+
+// See: https://en.wikipedia.org/wiki/Lenia
+// Continuous states quantized to a byte, ring-shaped kernel normalized to a unit sum
+public class LeniaTemplate extends ConvolutionModel {
+    private static final int edge = 13;
+    private static final float levels = Byte.MAX_VALUE;
+    private final float mu = 0.15f;
+    private final float sigma = 0.015f;
+    private final float dt = 0.1f;
+
+    public LeniaTemplate(int height, int width) {
+        super(height, width, edge, shell(edge));
+    }
+
+    private static float[] shell(int radius) {
+        final int len = (radius << 1) + 1;
+        final float[] mask = new float[len * len];
+        float total = 0;
+
+        for (int dh = 0; dh < len; ++dh) {
+            for (int dw = 0; dw < len; ++dw) {
+                final float dist = (float)Math.sqrt((dh - radius) * (dh - radius) + (dw - radius) * (dw - radius)) / radius;
+                if ((dist <= 0) || (dist >= 1)) continue;
+                mask[dh * len + dw] = (float)Math.exp(4 - 1 / (dist * (1 - dist)));
+                total += mask[dh * len + dw];
+            }
+        }
+        for (int i = 0; i < mask.length; ++i) {
+            mask[i] /= total;
+        }
+        return mask;
+    }
+
+    @Override
+    protected byte transition(byte state, float sum) {
+        final float u = sum / levels;
+        final float growth = 2 * (float)Math.exp(-(u - mu) * (u - mu) / (2 * sigma * sigma)) - 1;
+        final float value = Math.max(0, Math.min(1, state / levels + dt * growth));
+        return (byte)Math.round(value * levels);
+    }
+}
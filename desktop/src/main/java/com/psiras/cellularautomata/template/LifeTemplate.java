@@ -0,0 +1,11 @@
+package com.psiras.cellularautomata.template;
+
+import com.psiras.cellularautomata.model.BinaryModel;
+
+// See: https://en.wikipedia.org/wiki/Conway%27s_Game_of_Life
+// B3/S23, alive cells are born with 3 neighbours and survive with 2 or 3
+public class LifeTemplate extends BinaryModel {
+    public LifeTemplate(int height, int width) {
+        super(height, width, 1 << 3, (1 << 2) | (1 << 3));
+    }
+}
@@ -1,55 +1,115 @@
 package com.psiras.cellularautomata.template;
 
 import com.psiras.cellularautomata.model.CellularModel;
+import com.psiras.cellularautomata.model.ChannelField;
+import com.psiras.cellularautomata.model.Initializer;
+import com.psiras.cellularautomata.model.RowKernel;
+import com.psiras.cellularautomata.utils.SplitMix;
+
+import java.nio.ByteBuffer;
 
 public class NeighborTemplate extends CellularModel {
     private static final int edge = 1;
-    private final float alpha = 3.0f;
-    private final float beta = 2.0f;
-    private final float gamma = 1.0f;
-    private final float[] a;
-    private final float[] b;
-    private final float[] c;
+    public static final int A = 0;
+    public static final int B = 1;
+    public static final int C = 2;
+    public final float alpha;
+    public final float beta;
+    public final float gamma;
+    public final ChannelField field;
+    private final RowKernel kernel;
 
     public NeighborTemplate(int height, int width) {
+        this(height, width, 3.0f, 2.0f, 1.0f);
+    }
+
+    // Reaction rates of A, B and C, e.g. for parameter sweeps
+    public NeighborTemplate(int height, int width, float alpha, float beta, float gamma) {
         super(height, width, edge);
-        this.a = new float[vertical * width];
-        this.b = new float[vertical * width];
-        this.c = new float[vertical * width];
-        for (int i = 0; i < a.length; ++i) {
-            a[i] = (float)Math.random();
-            b[i] = (float)Math.random();
-            c[i] = (float)Math.random();
+        this.alpha = alpha;
+        this.beta = beta;
+        this.gamma = gamma;
+        this.field = new ChannelField(height, width, 3, 2, ChannelField.Precision.FLOAT);
+        this.kernel = RowKernel.lookup(this, this::scalarRow);
+    }
+
+    @Override
+    protected void initialize(int h, Initializer init, SplitMix random) {
+        super.initialize(h, init, random);
+        final int row = field.offset(h);
+
+        for (int w = 0; w < width; ++w) {
+            for (int c = 0; c < field.channels; ++c) {
+                field.set(row + c * field.plane + w, init.value(h, w, random));
+            }
         }
+        field.spread(h); // filled halo cells are never stepped, keep them alike in every frame
     }
 
     @Override
-    protected byte get(int pos) {
-        if (memory[pos] == wall) return wall;
-        final int dest = pos_set(pos);
+    public int lineBytes() {
+        return super.lineBytes() + field.lineBytes();
+    }
+
+    @Override
+    public void save(int line, ByteBuffer out) {
+        super.save(line, out);
+        field.save(line, out);
+    }
+
+    @Override
+    public void load(int line, ByteBuffer in) {
+        super.load(line, in);
+        field.load(line, in);
+        field.spread(line);
+    }
 
-        final float c_a = neighborhood(a, pos);
-        final float c_b = neighborhood(b, pos);
-        final float c_c = neighborhood(c, pos);
+    // Halo cells move their channels along, filled ones keep theirs as initialized
+    @Override
+    protected void move(int line, int from, int to) {
+        super.move(line, from, to);
+        field.move(line, from, to);
+    }
 
-        a[dest] = transition(c_a, c_b, c_c, alpha, gamma);
-        b[dest] = transition(c_b, c_c, c_a, beta, alpha);
-        c[dest] = transition(c_c, c_a, c_b, gamma, beta);
+    @Override
+    protected void copy(int from, int to, int count) {
+        super.copy(from, to, count);
+        for (int i = 0; i < count; ++i) field.copy(from + i, to + i);
+    }
 
-        return (byte)a[dest];
+    @Override
+    protected byte get(int pos) {
+        return step(pos / width, pos % width, new float[field.channels]);
     }
 
-    private float neighborhood(float[] matrix, int pos) {
-        final int len = (edge << 1) + 1;
-        final int src = pos - edge - edge * width;
-        float neighbours = 0;
+    @Override
+    protected void computeRow(int src, int dst, int from, int to) {
+        kernel.computeRow(src, dst, from, to);
+    }
 
-        for (int dh = 0; dh < len; ++dh) {
-            for (int dw = 0; dw < len; ++dw) {
-                neighbours += matrix[src + dh * width + dw];
-            }
+    private void scalarRow(int src, int dst, int from, int to) {
+        final float[] sums = new float[field.channels];
+        final int line = src / width;
+
+        for (int w = from; w < to; ++w) {
+            memory[dst + w] = step(line, w, sums);
         }
-        return neighbours / 9.0f;
+    }
+
+    private byte step(int line, int w, float[] sums) {
+        final int dest = field.offset(frame(line, 1)) + w;
+        final float cells = (float)(((edge << 1) + 1) * ((edge << 1) + 1)); // a multiply by 1 / cells rounds differently
+
+        field.neighborhood(line, w, edge, sums);
+        final float c_a = sums[A] / cells;
+        final float c_b = sums[B] / cells;
+        final float c_c = sums[C] / cells;
+        final float a = transition(c_a, c_b, c_c, alpha, gamma);
+
+        field.set(dest + A * field.plane, a);
+        field.set(dest + B * field.plane, transition(c_b, c_c, c_a, beta, alpha));
+        field.set(dest + C * field.plane, transition(c_c, c_a, c_b, gamma, beta));
+        return (byte)a;
     }
 
     private float transition(float a, float b, float c, float factor1, float factor2) {
@@ -0,0 +1,57 @@
+package com.psiras.cellularautomata.template;
+
+import com.psiras.cellularautomata.model.GridModel;
+
+import java.nio.ByteBuffer;
+
+// IllnessTemplate with its frames off the heap, same evolution for grids of any size
+public class OffHeapIllnessTemplate extends GridModel {
+    private static final int edge = 1;
+
+    public OffHeapIllnessTemplate(int height, int width) {
+        super(height, width, edge);
+    }
+
+    @Override
+    protected byte get(long line, int w) {
+        final byte state = grid.get(line, w);
+        if (state == IllnessTemplate.range - 1) return 0;
+        int neighbours = 0;
+
+        for (int dh = -edge; dh <= edge; ++dh) {
+            for (int dw = -edge; dw <= edge; ++dw) {
+                neighbours += grid.get(line + dh, w + dw) * IllnessTemplate.weight(dh, dw);
+            }
+        }
+        return IllnessTemplate.transition(state, neighbours);
+    }
+
+    @Override
+    public boolean settled(int line, int count) {
+        return unchanged(line, count);
+    }
+
+    // Same as get() per cell through IllnessTemplate.table, buffers of the source lines looked up once
+    @Override
+    protected void computeLine(long src, long dst, int from, int to) {
+        final ByteBuffer[] rows = new ByteBuffer[(edge << 1) + 1];
+        final int[] offsets = new int[rows.length];
+        final ByteBuffer out = grid.buffer(dst);
+        final int base = grid.offset(dst);
+
+        for (int dh = -edge; dh <= edge; ++dh) {
+            rows[dh + edge] = grid.buffer(src + dh);
+            offsets[dh + edge] = grid.offset(src + dh);
+        }
+
+        for (int w = from; w < to; ++w) {
+            int neighbours = 0;
+            for (int dh = -edge; dh <= edge; ++dh) {
+                for (int dw = -edge; dw <= edge; ++dw) {
+                    neighbours += rows[dh + edge].get(offsets[dh + edge] + w + dw) * IllnessTemplate.weight(dh, dw);
+                }
+            }
+            out.put(base + w, IllnessTemplate.table.next(rows[edge].get(offsets[edge] + w), neighbours));
+        }
+    }
+}
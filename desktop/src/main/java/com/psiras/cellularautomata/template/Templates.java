@@ -0,0 +1,66 @@
+package com.psiras.cellularautomata.template;
+
+import com.psiras.cellularautomata.model.CellularModel;
+import com.psiras.cellularautomata.rule.Rule;
+import com.psiras.cellularautomata.rule.RuleModel;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Templates by name, for command lines and benchmark parameters. Models come uninitialized.
+// Names ending in .rule are Rule files, or the rules shipped under /rules in the classpath
+public class Templates {
+    public static final String[] names = {"illness", "neighbor", "lenia", "life", "illness-offheap",
+            "illness.rule", "neighbor.rule"};
+    public static final String boundaries = "wall|fixed:STATE|open|reflective|periodic";
+    private static final Map<String, Rule> rules = new ConcurrentHashMap<String, Rule>(); // read once, compiled once
+
+    // Do not instantiate
+    private Templates() {
+    }
+
+    public static CellularModel create(String name, int height, int width) {
+        switch (name) {
+            case "illness": return new IllnessTemplate(height, width);
+            case "neighbor": return new NeighborTemplate(height, width);
+            case "lenia": return new LeniaTemplate(height, width);
+            case "life": return new LifeTemplate(height, width);
+            case "illness-offheap": return new OffHeapIllnessTemplate(height, width);
+            default:
+                if (name.endsWith(".rule")) return new RuleModel(rule(name), height, width);
+                throw new IllegalArgumentException("Unknown template: " + name);
+        }
+    }
+
+    public static Rule rule(String name) {
+        Rule rule = rules.get(name);
+        if (rule == null) try {
+            rule = Rule.load(name);
+            final Rule other = rules.putIfAbsent(name, rule);
+            if (other != null) rule = other;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Can't read rule: " + name, e);
+        }
+        return rule;
+    }
+
+    // With a boundary given as in boundaries, e.g. fixed:0 or periodic
+    public static CellularModel create(String name, int height, int width, String boundary) {
+        return bound(create(name, height, width), boundary);
+    }
+
+    // Sets a boundary given as in boundaries on a model made elsewhere, e.g. with parameters
+    public static CellularModel bound(CellularModel model, String boundary) {
+        final int colon = boundary.indexOf(':');
+        final String mode = (colon < 0 ? boundary : boundary.substring(0, colon)).toUpperCase();
+        final byte state = (byte)(colon < 0 ? 0 : Integer.parseInt(boundary.substring(colon + 1)));
+        return model.setBoundary(CellularModel.Boundary.valueOf(mode), state);
+    }
+
+    // Edge of a template, read off a throwaway 1x1 model
+    public static int edge(String name) {
+        if (name.endsWith(".rule")) return rule(name).edge;
+        return create(name, 1, 1).edge();
+    }
+}
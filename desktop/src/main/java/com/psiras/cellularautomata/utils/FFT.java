@@ -11,19 +11,20 @@ public class FFT {
     }
 
     public static byte[] image_fft(byte[] x, int width, boolean positive) {
-        final Complex[] z = new Complex[x.length];
+        final float[] re = new float[x.length];
+        final float[] im = new float[x.length];
 
         for (int i = 0; i < x.length; ++i) {
-            z[i] = new Complex(x[i], 0.0f);
+            re[i] = x[i];
         }
 
-        fft2(z, width);
-        fftshift2(z, width);
+        FloatFFT.fft2(re, im, width);
+        FloatFFT.fftshift2(re, im, width);
         final float filter = (float)Math.sqrt(x.length) * imagefltrate;
         double scale = 1.0;
 
         for (int i = 0; i < x.length; ++i) {
-            final float distance2 = z[i].abs2();
+            final float distance2 = (re[i] * re[i] + im[i] * im[i]);
             scale += Math.min(distance2, filter);
         }
         scale = Math.sqrt(scale / x.length); // about middle
@@ -32,7 +33,8 @@ public class FFT {
         final float tobyte = (float)((Byte.MAX_VALUE + shift) / (scale * 2));
 
         for (int i = 0; i < x.length; ++i) {
-            float value = Math.min(z[i].abs() * tobyte, range);
+            final float abs = (float)Math.sqrt(re[i] * re[i] + im[i] * im[i]);
+            float value = Math.min(abs * tobyte, range);
             x[i] = (byte)(value - shift);
         }
         return x;
@@ -43,14 +45,9 @@ public class FFT {
     }
 
     public static Complex[] fftshiftn(Complex[] x, int... dim) {
+        check_dimension(x.length, dim);
         final int half = (x.length >>> 1);
-        int shift = 0;
-
-        for (int i = 0; i < dim.length; ++i) {
-            final int dh = (dim[i] >>> 1);
-            shift <<= Bitwise.log2(dh) + 1;
-            shift += dh;
-        }
+        final int shift = FloatFFT.shift_mask(dim);
 
         for (int i = 0; i < half; ++i) {
             final int j = (i ^ shift);
@@ -62,19 +59,11 @@ public class FFT {
     }
 
     public static Complex[] fftn(Complex[] x, int... dim) {
-        final int maxsize = check_dimension(x.length, dim);
-        final Complex[] stack = fft_stack(maxsize);
-        final Complex[] pool = fft_pool(maxsize);
-
-        for (int i = 0, step = 1; i < dim.length; step *= dim[i++]) {
-            final int rows = x.length / dim[i];
-            final int cols = (i == 0 ? dim[i] : 1);
-
-            for (int j = 0; j < rows; ++j) {
-                fft_kernel(x, x, j * cols, step, dim[i], stack, pool);
-            }
-        }
-        return x;
+        check_dimension(x.length, dim);
+        final float[] re = real(x);
+        final float[] im = imag(x);
+        FloatFFT.fftn(re, im, dim);
+        return apply(x, re, im);
     }
 
     public static Complex[] fft2(Complex[] x, int width) {
@@ -82,24 +71,15 @@ public class FFT {
     }
 
     public static Complex[] fft(Complex[] x) {
-        fft_kernel(x, x, 0, 1, x.length, null, null);
-        return x;
+        return fftn(x, x.length);
     }
 
     public static Complex[] ifftn(Complex[] x, int... dim) {
-        final int maxsize = check_dimension(x.length, dim);
-        final Complex[] stack = fft_stack(maxsize);
-        final Complex[] pool = fft_pool(maxsize);
-
-        for (int i = 0, step = 1; i < dim.length; step *= dim[i++]) {
-            final int rows = x.length / dim[i];
-            final int cols = (i == 0 ? dim[i] : 1);
-
-            for (int j = 0; j < rows; ++j) {
-                ifft_kernel(x, x, j * cols, step, dim[i], stack, pool);
-            }
-        }
-        return x;
+        check_dimension(x.length, dim);
+        final float[] re = real(x);
+        final float[] im = imag(x);
+        FloatFFT.ifftn(re, im, dim);
+        return apply(x, re, im);
     }
 
     public static Complex[] ifft2(Complex[] x, int width) {
@@ -107,23 +87,34 @@ public class FFT {
     }
 
     public static Complex[] ifft(Complex[] x) {
-        ifft_kernel(x, x, 0, 1, x.length, null, null);
-        return x;
+        return ifftn(x, x.length);
     }
 
     public static Complex[] convolve(Complex[] x, Complex[] y, boolean padzeroes) {
         if (padzeroes) x = convolve_array(x);
         if (padzeroes) y = convolve_array(y);
-        convolve_kernel(x, y, 0, 1, x.length, null, null);
-        return y;
+        if (y.length != x.length) throw new IllegalArgumentException("Dimensions don't agree");
+        final float[] yre = real(y);
+        final float[] yim = imag(y);
+        FloatFFT.convolve(real(x), imag(x), yre, yim, y.length);
+        return apply(y, yre, yim);
     }
 
-    public static Complex[] fft_stack(int count) {
-        return new Complex[Bitwise.log2(count >>> 2) + 1];
+    private static float[] real(Complex[] x) {
+        final float[] re = new float[x.length];
+        for (int i = 0; i < x.length; ++i) re[i] = x[i].re();
+        return re;
     }
 
-    public static Complex[] fft_pool(int count) {
-        return new Complex[count >>> 2];
+    private static float[] imag(Complex[] x) {
+        final float[] im = new float[x.length];
+        for (int i = 0; i < x.length; ++i) im[i] = x[i].im();
+        return im;
+    }
+
+    private static Complex[] apply(Complex[] x, float[] re, float[] im) {
+        for (int i = 0; i < x.length; ++i) x[i] = new Complex(re[i], im[i]);
+        return x;
     }
 
     private static Complex[] convolve_array(Complex[] x) {
@@ -146,98 +137,6 @@ public class FFT {
         return maxdim;
     }
 
-    protected static void convolve_kernel(Complex[] x, Complex[] y, int start, int step, int count, Complex[] stack, Complex[] pool) {
-        if (y.length != x.length) throw new IllegalArgumentException("Dimensions don't agree");
-        if (stack == null) stack = fft_stack(count);
-        if (pool == null) pool = fft_pool(count);
-
-        // compute FFT of each sequence
-        fft_kernel(x, x, start, step, count, stack, pool);
-        fft_kernel(y, y, start, step, count, stack, pool);
-
-        // point-wise multiply
-        for (int i = start; i < count; i += step) {
-            y[i] = y[i].times(x[i]);
-        }
-        ifft_kernel(y, y, start, step, count, stack, pool);
-    }
-
-    protected static void ifft_kernel(Complex[] x, Complex[] y, int start, int step, int count, Complex[] stack, Complex[] pool) {
-        if (y.length != x.length) throw new IllegalArgumentException("Dimensions don't agree");
-        final float div = 1.0f / count;
-
-        // take conjugate
-        for (int i = start; i < count; i += step) {
-            y[i] = x[i].conjugate();
-        }
-
-        // compute forward FFT
-        fft_kernel(y, y, start, step, count, stack, pool);
-
-        // take conjugate again
-        for (int i = start; i < count; i += step) {
-            y[i] = y[i].conjugate().scale(div);
-        }
-    }
-
-    protected static void fft_kernel(Complex[] x, Complex[] y, int start, int step, int count, Complex[] stack, Complex[] pool) {
-        if (y.length != x.length) throw new IllegalArgumentException("Dimensions don't agree");
-        if (count == 1) {y[start] = x[start]; return;}
-        if ((count % 2) != 0) throw new IllegalArgumentException("n is not a power of 2");
-
-        final int half = (count >>> 1);
-        final int poolsize = (count >>> 2);
-        final boolean usepool = (poolsize > 0) && (y == x);
-        if (stack == null) stack = fft_stack(count);
-        if ((pool == null) && usepool) pool = fft_pool(count);
-
-        fft_kernel(x, y, start, step << 1, half, stack, pool); // even terms
-        fft_kernel(x, y, start + step, step << 1, half, stack, pool); // odd terms
-
-        // combine
-        final int decn = (count - 1);
-        final int dech = (half - 1);
-        final double th = -Math.PI / half;
-        final int halfgap = step * half;
-        Complex parent = x[start];
-
-        if (usepool) {
-            //TODO: may be reduced to 1/8, draw tree with reverse references,
-            // we may keep previous level of right subtree instead odd values
-            // See also 0 memory algorithm with different recursion tree in:
-            // arXiv:1001.5272v1 -- D. Harvey, D. Roche: An in-place truncated
-            // Fourier transform and applications to polynomial multiplication
-            final int poolstep = (step << 2);
-            for (int i = 0, it = start + step; i < poolsize; ++i, it += poolstep) {
-                pool[i] = x[it];
-            }
-        }
-
-        for (int it = count; it != decn; it = Bitwise.tree_next(decn, half, it)) {
-            final int level = Bitwise.trailing(it & dech);
-            final int i = (it & decn);
-
-            if (i < half) {
-                final double ith = i * th;
-                final int position = i * step;
-                final int k = start + (position << 1) + step;
-                final int n = start + position;
-
-                final Complex xkk = (usepool && (((i << 1) & 0x3) == 0) ? pool[i >>> 1] : x[k]);
-                final Complex wi = new Complex((float)Math.cos(ith), (float)Math.sin(ith)).times(xkk);
-                final Complex xk = parent;
-
-                stack[level] = x[n + halfgap];
-                y[n + halfgap] = xk.minus(wi);
-
-                parent = x[n];
-                y[n] = xk.plus(wi);
-            } else {
-                parent = stack[level];
-            }
-        }
-    }
-
     @Deprecated
     private static Complex[] fft_slice(Complex[] x, int start, int step, int count) {
         final Complex[] y = new Complex[count];
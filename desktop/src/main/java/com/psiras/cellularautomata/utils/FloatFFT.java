@@ -0,0 +1,181 @@
+package com.psiras.cellularautomata.utils;
+
+// In-place radix-2 FFT over split real/imaginary float arrays. Twiddle factors are computed
+// once per size and cached, so a transform allocates nothing. The first dimension is the
+// contiguous one, as in FFT.fftn
+public class FloatFFT {
+    private static final float[][] cosines = new float[32][];
+    private static final float[][] sines = new float[32][];
+
+    // Do not instantiate
+    private FloatFFT() {
+    }
+
+    public static void fftshift2(float[] re, float[] im, int width) {
+        fftshiftn(re, im, width, re.length / width);
+    }
+
+    public static void fftshiftn(float[] re, float[] im, int... dim) {
+        check_dimension(re, im, dim);
+        final int shift = shift_mask(dim);
+        final int half = (re.length >>> 1);
+
+        for (int i = 0; i < half; ++i) {
+            final int j = (i ^ shift);
+            float swap = re[i];
+            re[i] = re[j];
+            re[j] = swap;
+            swap = im[i];
+            im[i] = im[j];
+            im[j] = swap;
+        }
+    }
+
+    public static void fft2(float[] re, float[] im, int width) {
+        fftn(re, im, width, re.length / width);
+    }
+
+    public static void fftn(float[] re, float[] im, int... dim) {
+        transform(re, im, dim, 1.0f);
+    }
+
+    public static void fft(float[] re, float[] im) {
+        fftn(re, im, re.length);
+    }
+
+    public static void ifft2(float[] re, float[] im, int width) {
+        ifftn(re, im, width, re.length / width);
+    }
+
+    public static void ifftn(float[] re, float[] im, int... dim) {
+        transform(re, im, dim, -1.0f);
+        final float div = 1.0f / re.length;
+
+        for (int i = 0; i < re.length; ++i) {
+            re[i] *= div;
+            im[i] *= div;
+        }
+    }
+
+    public static void ifft(float[] re, float[] im) {
+        ifftn(re, im, re.length);
+    }
+
+    // Circular convolution, the result replaces y
+    public static void convolve(float[] xre, float[] xim, float[] yre, float[] yim, int... dim) {
+        fftn(xre, xim, dim);
+        fftn(yre, yim, dim);
+        multiply(xre, xim, yre, yim);
+        ifftn(yre, yim, dim);
+    }
+
+    // Point-wise product of two spectra, the result replaces y
+    public static void multiply(float[] xre, float[] xim, float[] yre, float[] yim) {
+        if ((yre.length != xre.length) || (yim.length != xim.length)) {
+            throw new IllegalArgumentException("Dimensions don't agree");
+        }
+
+        for (int i = 0; i < yre.length; ++i) {
+            final float real = (yre[i] * xre[i] - yim[i] * xim[i]);
+            final float imag = (yre[i] * xim[i] + yim[i] * xre[i]);
+            yre[i] = real;
+            yim[i] = imag;
+        }
+    }
+
+    private static void transform(float[] re, float[] im, int[] dim, float sign) {
+        check_dimension(re, im, dim);
+
+        for (int i = 0, step = 1; i < dim.length; step *= dim[i++]) {
+            final int block = step * dim[i];
+
+            for (int outer = 0; outer < re.length; outer += block) {
+                for (int inner = 0; inner < step; ++inner) {
+                    kernel(re, im, outer + inner, step, dim[i], sign);
+                }
+            }
+        }
+    }
+
+    private static void kernel(float[] re, float[] im, int start, int step, int count, float sign) {
+        if (count == 1) return;
+        final int bits = Bitwise.log2(count);
+        final float[] cos = cosines[bits];
+        final float[] sin = sines[bits];
+
+        // bit-reversal permutation
+        for (int i = 0; i < count; ++i) {
+            final int j = (Bitwise.reverse(i) >>> (32 - bits));
+            if (j <= i) continue;
+            final int p = start + i * step;
+            final int q = start + j * step;
+            float swap = re[p];
+            re[p] = re[q];
+            re[q] = swap;
+            swap = im[p];
+            im[p] = im[q];
+            im[q] = swap;
+        }
+
+        // butterflies
+        for (int size = 2, stride = (count >>> 1); size <= count; size <<= 1, stride >>>= 1) {
+            final int half = (size >>> 1);
+            final int halfgap = half * step;
+
+            for (int i = 0; i < count; i += size) {
+                for (int k = 0; k < half; ++k) {
+                    final float wr = cos[k * stride];
+                    final float wi = sign * sin[k * stride];
+                    final int p = start + (i + k) * step;
+                    final int q = p + halfgap;
+
+                    final float tr = (wr * re[q] - wi * im[q]);
+                    final float ti = (wr * im[q] + wi * re[q]);
+                    re[q] = re[p] - tr;
+                    im[q] = im[p] - ti;
+                    re[p] += tr;
+                    im[p] += ti;
+                }
+            }
+        }
+    }
+
+    private static synchronized void twiddles(int count) {
+        final int bits = Bitwise.log2(count);
+        if (cosines[bits] != null) return;
+        final int half = Math.max(count >>> 1, 1);
+        final float[] cos = new float[half];
+        final float[] sin = new float[half];
+        final double th = -2 * Math.PI / count;
+
+        for (int k = 0; k < half; ++k) {
+            cos[k] = (float)Math.cos(k * th);
+            sin[k] = (float)Math.sin(k * th);
+        }
+        sines[bits] = sin;
+        cosines[bits] = cos;
+    }
+
+    protected static int shift_mask(int[] dim) {
+        int shift = 0;
+        for (int i = dim.length - 1; i >= 0; --i) {
+            shift <<= Bitwise.log2(dim[i]);
+            shift += (dim[i] >>> 1);
+        }
+        return shift;
+    }
+
+    private static int check_dimension(float[] re, float[] im, int[] dim) {
+        if (re.length != im.length) throw new IllegalArgumentException("Dimensions don't agree");
+        int size = 1;
+
+        for (int i = 0; i < dim.length; ++i) {
+            if ((dim[i] & (dim[i] - 1)) != 0) throw new IllegalArgumentException("n is not a power of 2");
+            twiddles(dim[i]);
+            size *= dim[i];
+        }
+
+        if (size != re.length) throw new IllegalArgumentException("Dimensions don't agree");
+        return size;
+    }
+}
@@ -0,0 +1,55 @@
+package com.psiras.cellularautomata.utils;
+
+// IEEE 754 binary16 conversions, rounding to nearest even
+// See also: http://www.fox-toolkit.org/ftp/fasthalffloatconversion.pdf
+public class Half {
+    // Do not instantiate
+    private Half() {
+    }
+
+    public static float toFloat(short half) {
+        final int sign = (half & 0x8000) << 16;
+        final int exponent = (half >>> 10) & 0x1f;
+        int mantissa = (half & 0x03ff);
+
+        if (exponent == 0x1f) { // infinity or NaN
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        } else if (exponent != 0) {
+            return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+        } else if (mantissa == 0) {
+            return Float.intBitsToFloat(sign);
+        }
+        // subnormal
+        int shift = 0;
+        while ((mantissa & 0x0400) == 0) {
+            mantissa <<= 1;
+            ++shift;
+        }
+        return Float.intBitsToFloat(sign | ((113 - shift) << 23) | ((mantissa & 0x03ff) << 13));
+    }
+
+    public static short fromFloat(float value) {
+        final int bits = Float.floatToRawIntBits(value);
+        final int sign = (bits >>> 16) & 0x8000;
+        final int exponent = ((bits >>> 23) & 0xff) - 112;
+        final int mantissa = (bits & 0x007fffff);
+
+        if (exponent >= 0x1f) { // overflow, infinity or NaN
+            final boolean nan = (((bits >>> 23) & 0xff) == 0xff) && (mantissa != 0);
+            return (short)(sign | 0x7c00 | (nan ? 0x0200 : 0));
+        } else if (exponent <= 0) { // subnormal or zero
+            if (exponent < -10) return (short)sign;
+            final int full = (mantissa | 0x00800000);
+            final int shift = 14 - exponent;
+            final int half = (full >>> shift);
+            final int rest = full & ((1 << shift) - 1);
+            final int midway = (1 << (shift - 1));
+            final int round = ((rest > midway) || ((rest == midway) && ((half & 1) != 0)) ? 1 : 0);
+            return (short)(sign | (half + round));
+        }
+        final int half = (exponent << 10) | (mantissa >>> 13);
+        final int rest = (mantissa & 0x1fff);
+        final int round = ((rest > 0x1000) || ((rest == 0x1000) && ((half & 1) != 0)) ? 1 : 0);
+        return (short)(sign | (half + round)); // carry may roll into exponent, still correct
+    }
+}
@@ -0,0 +1,65 @@
+package com.psiras.cellularautomata.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Log-linear histogram of non-negative values in the manner of HdrHistogram: 16 buckets per
+// power of two, about 6% resolution at any magnitude, recording is one atomic increment
+public class Histogram {
+    private static final int shift = 4;
+    private static final int sub = 1 << shift; // buckets per power of two
+    private final AtomicLongArray counts = new AtomicLongArray(64 * sub);
+
+    public void record(long value) {
+        counts.incrementAndGet(bucket(Math.max(value, 0)));
+    }
+
+    private static int bucket(long value) {
+        if (value < sub) return (int)value;
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int mantissa = (int)(value >>> (exponent - shift)) & (sub - 1);
+        return (exponent - shift + 1) * sub + mantissa;
+    }
+
+    // Lowest value of a bucket
+    private static long lower(int bucket) {
+        if (bucket < sub) return bucket;
+        final int exponent = bucket / sub + shift - 1;
+        return (long)(sub + bucket % sub) << (exponent - shift);
+    }
+
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); ++i) count += counts.get(i);
+        return count;
+    }
+
+    // Value at or below which the given share of values lie, 0 when empty
+    public long percentile(double quantile) {
+        final long target = (long)Math.ceil(quantile * count());
+        long seen = 0;
+        for (int i = 0; i < counts.length(); ++i) {
+            seen += counts.get(i);
+            if ((seen >= target) && (seen > 0)) return lower(i);
+        }
+        return 0;
+    }
+
+    public long max() {
+        for (int i = counts.length() - 1; i >= 0; --i) {
+            if (counts.get(i) != 0) return lower(i);
+        }
+        return 0;
+    }
+
+    // Adds the counts of another histogram, e.g. per-thread ones
+    public void add(Histogram other) {
+        for (int i = 0; i < counts.length(); ++i) {
+            final long count = other.counts.get(i);
+            if (count != 0) counts.addAndGet(i, count);
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); ++i) counts.set(i, 0);
+    }
+}
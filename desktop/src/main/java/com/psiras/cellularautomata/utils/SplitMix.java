@@ -0,0 +1,41 @@
+package com.psiras.cellularautomata.utils;
+
+// SplitMix64 generator. Unlike Math.random() it is unsynchronized and reproducible, and
+// fork() derives independent streams from one seed, e.g. one stream per tile.
+// java.util.SplittableRandom isn't available on older Android releases
+// See: https://prng.di.unimi.it/splitmix64.c
+public class SplitMix {
+    private static final long golden = 0x9e3779b97f4a7c15L;
+    private long state;
+
+    public SplitMix(long seed) {
+        this.state = seed;
+    }
+
+    public static SplitMix fork(long seed, long stream) {
+        return new SplitMix(mix(seed + mix(stream * golden)));
+    }
+
+    public long state() {
+        return state;
+    }
+
+    public long nextLong() {
+        return mix(state += golden);
+    }
+
+    public int nextInt(int bound) {
+        return (int)(((nextLong() >>> 33) * bound) >>> 31);
+    }
+
+    // Uniform in [0, 1)
+    public float nextFloat() {
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
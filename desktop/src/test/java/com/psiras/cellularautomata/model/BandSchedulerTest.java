@@ -0,0 +1,90 @@
+package com.psiras.cellularautomata.model;
+
+import com.psiras.cellularautomata.template.Templates;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Frames the scheduler runs on several threads against the same model stepped whole, one
+// generation after the other on the test thread
+public class BandSchedulerTest {
+    private static final int height = 97;
+    private static final int width = 61;
+    private static final long generations = 40;
+    private static final int[] threads = {1, 2, 4, 7};
+    private static final String[] templates = {"life", "neighbor", "illness"};
+
+    static CellularModel model(String template, String boundary) {
+        return Templates.create(template, height, width, boundary).initialize(Initializer.noise, 7, 1);
+    }
+
+    static byte[] sequential(CellularModel model, long generations) {
+        for (long g = 1; g <= generations; ++g) model.calculate((int)(g % model.frames) * model.height, model.height);
+        final byte[] cells = new byte[model.height * model.width];
+        model.snapshot((int)(generations % model.frames) * model.height, cells);
+        return cells;
+    }
+
+    static byte[] scheduled(ModelExecutor executor, CellularModel model, int depth, long generations) throws InterruptedException {
+        executor.setModel(model, 0, depth);
+        executor.runTo(generations);
+        executor.start();
+        try {
+            while (executor.generation() < generations) Thread.sleep(1);
+            try (FrameHandle frame = executor.pin()) {
+                assertEquals(generations, frame.generation);
+                return frame.snapshot(new byte[model.height * model.width]);
+            }
+        } finally {
+            executor.terminate();
+        }
+    }
+
+    @Test
+    public void matchesSequential() throws Exception {
+        for (String template : templates) for (String boundary : new String[] {"wall", "periodic"}) {
+            final byte[] expected = sequential(model(template, boundary), generations);
+            for (int numthreads : threads) {
+                final byte[] actual = scheduled(new ModelExecutor(numthreads), model(template, boundary), 1, generations);
+                assertArrayEquals(template + " " + boundary + " on " + numthreads, expected, actual);
+            }
+        }
+    }
+
+    // Several generations per tile pass, wrapping models fall back to one
+    @Test
+    public void tilesGenerations() throws Exception {
+        for (String template : templates) for (String boundary : new String[] {"wall", "reflective", "periodic"}) {
+            final byte[] expected = sequential(model(template, boundary), generations);
+            for (int depth : new int[] {2, 3, 8}) for (int numthreads : threads) {
+                final byte[] actual = scheduled(new ModelExecutor(numthreads), model(template, boundary), depth, generations);
+                assertArrayEquals(template + " " + boundary + " " + depth + " deep on " + numthreads, expected, actual);
+            }
+        }
+    }
+
+    // Noise in the first lines only, the quiet rest is carried forward instead of calculated
+    @Test
+    public void carriesQuietBands() throws Exception {
+        for (String template : new String[] {"illness", "illness.rule"}) for (String boundary : new String[] {"wall", "periodic"}) {
+            final byte[] expected = sequential(quiet(template, boundary), generations);
+            for (int numthreads : threads) {
+                final ModelExecutor executor = new ModelExecutor(numthreads);
+                final byte[] actual = scheduled(executor, quiet(template, boundary), 1, generations);
+                assertArrayEquals(template + " " + boundary + " on " + numthreads, expected, actual);
+                assertTrue(template + " " + boundary + " on " + numthreads, executor.skipped() > 0);
+            }
+        }
+    }
+
+    private static CellularModel quiet(String template, String boundary) {
+        final CellularModel model = model(template, boundary);
+        for (int i = 0; i < model.memory.length; ++i) {
+            if (i % (height * width) >= 12 * width) model.memory[i] = 0;
+        }
+        return model;
+    }
+}
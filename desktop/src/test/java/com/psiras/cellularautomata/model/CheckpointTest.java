@@ -0,0 +1,103 @@
+package com.psiras.cellularautomata.model;
+
+import com.psiras.cellularautomata.template.Templates;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// Saved frames restored into fresh models, saves of a running executor included
+public class CheckpointTest {
+    private static final int height = 150;
+    private static final int width = 77;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static CellularModel model(String template, String boundary) {
+        return Templates.create(template, height, width, boundary).initialize(Initializer.noise, 7, 1);
+    }
+
+    private static byte[] frame(CellularModel model, long generation) {
+        final byte[] cells = new byte[model.height * model.width];
+        model.snapshot((int)(generation % model.frames) * model.height, cells);
+        return cells;
+    }
+
+    private static byte[] restored(File file, String template, String boundary, long generation) throws Exception {
+        final CellularModel model = Templates.create(template, height, width, boundary);
+        final Checkpoint.Header header = Checkpoint.restore(file, template, model);
+        assertEquals(generation, header.generation);
+        return frame(model, generation);
+    }
+
+    @Test
+    public void restoresSaved() throws Exception {
+        for (String template : new String[] {"life", "illness", "neighbor.rule"}) {
+            final File file = folder.newFile();
+            final CellularModel model = model(template, "periodic");
+            BandSchedulerTest.sequential(model, 5);
+            try (Checkpoint checkpoint = new Checkpoint(file)) {
+                assertEquals(height, checkpoint.save(template, model, 5));
+            }
+
+            final Checkpoint.Header header = Checkpoint.header(file);
+            assertEquals(template, header.template);
+            assertEquals(CellularModel.Boundary.PERIODIC, header.boundary);
+            assertEquals(7, header.seed);
+            assertArrayEquals(template, frame(model, 5), restored(file, template, "periodic", 5));
+        }
+    }
+
+    // Later saves write the bands that changed, quiet ones stay as the first save wrote them
+    @Test
+    public void savesChangedBands() throws Exception {
+        final File file = folder.newFile();
+        final CellularModel model = model("illness", "wall");
+        for (int i = 0; i < model.memory.length; ++i) {
+            if (i % (height * width) >= 12 * width) model.memory[i] = 0;
+        }
+        final ModelExecutor executor = new ModelExecutor(3);
+        executor.setModel(model);
+        executor.start();
+        int fewer = 0;
+
+        try (Checkpoint checkpoint = new Checkpoint(file)) {
+            for (int round = 0; round < 6; ++round) {
+                executor.step(5);
+                while (executor.generation() < executor.horizon()) Thread.sleep(1);
+                try (FrameHandle frame = executor.pin()) {
+                    final int written = checkpoint.save("illness", frame);
+                    if (round == 0) assertEquals(height, written);
+                    if (written < height) ++fewer;
+                    assertArrayEquals("round " + round, frame.snapshot(new byte[height * width]),
+                            restored(file, "illness", "wall", frame.generation));
+                }
+            }
+        } finally {
+            executor.terminate();
+        }
+        assertTrue(fewer > 0);
+    }
+
+    @Test
+    public void rejectsOtherModels() throws Exception {
+        final File file = folder.newFile();
+        try (Checkpoint checkpoint = new Checkpoint(file)) {
+            checkpoint.save("life", model("life", "wall"), 0);
+        }
+        for (String[] other : new String[][] {{"illness", "wall"}, {"life", "periodic"}}) try {
+            Checkpoint.restore(file, other[0], Templates.create(other[0], height, width, other[1]));
+            fail(other[0] + " " + other[1]);
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
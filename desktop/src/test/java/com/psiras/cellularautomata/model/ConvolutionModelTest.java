@@ -0,0 +1,52 @@
+package com.psiras.cellularautomata.model;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+// Bands convolved through FloatFFT against the direct sum get() takes per cell. Integer weights
+// and states keep the sums whole, so rounding them leaves no FFT error
+public class ConvolutionModelTest {
+    private static final int height = 83;
+    private static final int width = 57;
+
+    private static class Sums extends ConvolutionModel {
+        Sums(int edge, float[] mask) {
+            super(ConvolutionModelTest.height, ConvolutionModelTest.width, edge, mask);
+        }
+
+        @Override
+        protected byte transition(byte state, float sum) {
+            return (byte)((Math.round(sum) + state) % 101);
+        }
+    }
+
+    private static Sums model(int edge, long seed) {
+        final Random random = new Random(seed);
+        final int len = (edge << 1) + 1;
+        final float[] mask = new float[len * len];
+        for (int i = 0; i < mask.length; ++i) mask[i] = random.nextInt(3);
+        final Sums model = new Sums(edge, mask);
+        for (int i = 0; i < height * width; ++i) model.memory[i] = (byte)(random.nextInt(5) - 1);
+        return model;
+    }
+
+    @Test
+    public void spectralMatchesDirect() {
+        for (int edge : new int[] {ConvolutionModel.spectral_edge, 6}) {
+            for (int rows : new int[] {height, 25, 7, 1}) {
+                final Sums model = model(edge, edge * 100 + rows);
+                for (int first = 0; first < height; first += rows) {
+                    model.calculate(height + first, Math.min(rows, height - first));
+                }
+
+                for (int h = edge; h < height - edge; ++h) for (int w = edge; w < width - edge; ++w) {
+                    assertEquals("edge " + edge + ", bands of " + rows + " at " + h + "," + w,
+                            model.get(h * width + w), model.memory[(height + h) * width + w]);
+                }
+            }
+        }
+    }
+}
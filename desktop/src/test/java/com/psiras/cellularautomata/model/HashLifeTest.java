@@ -0,0 +1,52 @@
+package com.psiras.cellularautomata.model;
+
+import com.psiras.cellularautomata.template.LifeTemplate;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+// Jumps of the quadtree against BinaryModel stepped one generation at a time. The soup starts
+// far enough from the walls that it never reaches them in the generations run
+public class HashLifeTest {
+    private static final int height = 400;
+    private static final int width = 300;
+    private static final Initializer soup = (h, w, random) ->
+            ((h > 180) && (h < 220) && (w > 130) && (w < 170) ? random.nextFloat() : 0.0f);
+
+    private static void matches(int capacity) {
+        final BinaryModel model = (BinaryModel)new LifeTemplate(height, width).initialize(soup, 3, 1);
+        final HashLife life = new HashLife(model, capacity);
+        life.load(model, 0);
+        final byte[] expected = new byte[height * width];
+        final byte[] actual = new byte[height * width];
+        long generation = 0;
+
+        for (int k : new int[] {0, 0, 1, 2, 3, 4, 5, 3}) {
+            life.advance(k);
+            for (int i = 0; i < (1 << k); ++i) {
+                ++generation;
+                model.calculate((int)(generation % model.frames) * height, height);
+            }
+            assertEquals(generation, life.generation());
+
+            final BinaryModel stored = new LifeTemplate(height, width);
+            life.store(stored, 0);
+            model.snapshot((int)(generation % model.frames) * height, expected);
+            stored.snapshot(0, actual);
+            assertArrayEquals("generation " + generation + ", capacity " + capacity, expected, actual);
+        }
+    }
+
+    @Test
+    public void matchesBinaryModel() {
+        matches(1 << 20);
+    }
+
+    // Nodes dropping out of the table are only no longer shared
+    @Test
+    public void survivesEviction() {
+        matches(256);
+    }
+}
@@ -0,0 +1,80 @@
+package com.psiras.cellularautomata.model;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Recorded frames read back against the model stepped sequentially, whole and line by line
+public class RecorderTest {
+    private static final long generations = 60;
+    private static final int interval = 3;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private void roundTrip(String template, String boundary, Recorder.Overflow overflow) throws Exception {
+        final File file = folder.newFile();
+        final ModelExecutor executor = new ModelExecutor(4);
+        executor.setModel(BandSchedulerTest.model(template, boundary));
+        final Recorder recorder = new Recorder(executor, file, interval, 4, 2, overflow);
+        recorder.start();
+        executor.runTo(generations);
+        executor.start();
+        try {
+            while (executor.generation() < generations) Thread.sleep(1);
+        } finally {
+            recorder.close();
+            executor.terminate();
+        }
+        final String name = template + " " + boundary + " " + overflow;
+        if (overflow == Recorder.Overflow.DROP) { // listening from before the start, every generation is told
+            assertEquals(name, generations / interval, recorder.recorded() + recorder.dropped());
+            assertEquals(name, 0, recorder.missed());
+        } else { // the capture thread may begin a few generations late
+            assertTrue(name, recorder.recorded() + recorder.missed() <= generations / interval);
+            assertEquals(name, 0, recorder.dropped());
+        }
+
+        final CellularModel model = BandSchedulerTest.model(template, boundary);
+        final int height = model.height;
+        final int width = model.width;
+        final byte[] expected = new byte[height * width];
+        final byte[] frame = new byte[height * width];
+        final byte[] line = new byte[width];
+        long generation = 0;
+
+        try (Recording recording = new Recording(file)) {
+            assertEquals(name, recorder.recorded(), recording.frames());
+            assertTrue(name, recording.frames() > 0);
+            for (int f = 0; f < recording.frames(); ++f) {
+                final long recorded = recording.generation(f);
+                assertEquals(name, 0, recorded % interval);
+                while (generation < recorded) {
+                    ++generation;
+                    model.calculate((int)(generation % model.frames) * height, height);
+                }
+                model.snapshot((int)(generation % model.frames) * height, expected);
+
+                assertArrayEquals(name + " " + recorded, expected, recording.read(recorded, frame));
+                recording.seek(recorded);
+                for (int h = 0; h < height; ++h) {
+                    recording.line(h, line);
+                    for (int w = 0; w < width; ++w) assertEquals(name + " " + recorded + " at " + h + "," + w, expected[h * width + w], line[w]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void readsBackRecorded() throws Exception {
+        for (String template : new String[] {"life", "illness"}) for (String boundary : new String[] {"wall", "periodic"}) {
+            for (Recorder.Overflow overflow : Recorder.Overflow.values()) roundTrip(template, boundary, overflow);
+        }
+    }
+}
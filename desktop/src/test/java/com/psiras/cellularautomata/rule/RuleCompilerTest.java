@@ -0,0 +1,122 @@
+package com.psiras.cellularautomata.rule;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+// Compiled kernels against the interpreter, bit for bit, on random states and channels
+public class RuleCompilerTest {
+    private static final int width = 17;
+    private static final int height = 9;
+    private static final int plane = height * width;
+    private static final String header = "param p = 2.5\n"
+            + "kernel k1 = 1 2 1 / 0 -1 3 / 1 1 1\n"
+            + "kernel k2 = 0.5 1 0.25 / 1 1 1 / 2 0 1\n"
+            + "kernel k3 = 1 1 1 1 1 / 1 1 1 1 1 / 1 1 0 1 1 / 1 1 1 1 1 / 1 1 1 1 1\n"
+            + "channel a b\n";
+
+    private Random random;
+    private int lets;
+
+    // Both kernels over the inner lines of the same state, interior cells only
+    private static void agree(Rule rule, long seed) {
+        final RuleKernel compiled = RuleCompiler.compile(rule, width, plane);
+        final RuleKernel interpreted = new RuleInterpreter(rule, width, plane);
+        assertFalse(rule.name, compiled instanceof RuleInterpreter);
+
+        final Random random = new Random(seed);
+        final int channels = rule.channels.size();
+        final byte[] memory = new byte[2 * plane];
+        final float[] floats = new float[2 * channels * plane];
+        for (int i = 0; i < memory.length; ++i) memory[i] = (byte)random.nextInt(256);
+        for (int i = 0; i < floats.length; ++i) floats[i] = (random.nextInt(10) == 0 ? Float.NaN : (float)random.nextGaussian() * 3);
+        final byte[] memory2 = memory.clone();
+        final float[] floats2 = floats.clone();
+
+        for (int line = 2; line < height - 2; ++line) {
+            final int fdst = channels * plane + line * width;
+            compiled.computeRow(memory, floats, line * width, (line + height) * width, line * width, fdst, 2, width - 2);
+            interpreted.computeRow(memory2, floats2, line * width, (line + height) * width, line * width, fdst, 2, width - 2);
+        }
+        assertArrayEquals(rule.name, memory2, memory);
+        for (int i = 0; i < floats.length; ++i) {
+            assertEquals(rule.name + " at " + i, Float.floatToIntBits(floats2[i]), Float.floatToIntBits(floats[i]));
+        }
+    }
+
+    @Test
+    public void shippedRules() throws Exception {
+        agree(Rule.load("illness.rule"), 1);
+        agree(Rule.load("neighbor.rule"), 2);
+    }
+
+    @Test
+    public void intDivisionByZero() {
+        final Rule rule = Rule.parse("zero", header + "let z = state - state\nstate = state / z + state % z + 3\n");
+        agree(rule, 3);
+    }
+
+    @Test
+    public void conversions() {
+        agree(Rule.parse("int", header + "let big = 16777217 * (state * state + 1)\nstate = int(big) % 127\n"), 4);
+        agree(Rule.parse("float", header + "a = float(state) / 3\nb = int(a * 100) / 7\nstate = int(b)\n"), 5);
+    }
+
+    @Test
+    public void randomRules() {
+        for (int seed = 0; seed < 500; ++seed) {
+            random = new Random(seed);
+            lets = 0;
+            final StringBuilder text = new StringBuilder(header);
+            final int count = random.nextInt(4);
+            for (int i = 0; i < count; ++i, ++lets) text.append("let l").append(i).append(" = ").append(number(0)).append('\n');
+            if (random.nextBoolean()) text.append("a = ").append(number(0)).append('\n');
+            if (random.nextBoolean()) text.append("b = ").append(number(0)).append('\n');
+            text.append("state = ").append(number(0)).append('\n');
+
+            final Rule rule;
+            try {
+                rule = Rule.parse("random" + seed, text.toString());
+            } catch (IllegalArgumentException e) {
+                if (e.getMessage().endsWith("Division by zero")) continue; // a constant divisor folded to 0
+                throw e;
+            }
+            agree(rule, seed);
+        }
+    }
+
+    private String pick(String... items) {
+        return items[random.nextInt(items.length)];
+    }
+
+    private String number(int depth) {
+        switch (random.nextInt(depth > 3 ? 4 : 13)) {
+            case 0: return Integer.toString(random.nextInt(300) - 150);
+            case 1: return Float.toString((random.nextInt(2000) - 1000) / 7.0f);
+            case 2: return "state";
+            case 3: return pick("a", "b");
+            case 4: return "(" + number(depth + 1) + " " + pick("+", "-", "*") + " " + number(depth + 1) + ")";
+            case 5: return "(" + number(depth + 1) + " / " + number(depth + 1) + ")";
+            case 6: return "(" + number(depth + 1) + " % " + number(depth + 1) + ")";
+            case 7: return "(" + condition(depth + 1) + " ? " + number(depth + 1) + " : " + number(depth + 1) + ")";
+            case 8: return pick("min", "max") + "(" + number(depth + 1) + ", " + number(depth + 1) + ")";
+            case 9: return "clamp(" + number(depth + 1) + ", " + number(depth + 1) + ", " + number(depth + 1) + ")";
+            case 10: return pick("abs", "int", "float", "-") + "(" + number(depth + 1) + ")";
+            case 11: return pick("k1", "k2", "k3") + "(" + pick("state", "a", "b") + ")";
+            default: return (lets > 0 ? "l" + random.nextInt(lets) : "p");
+        }
+    }
+
+    private String condition(int depth) {
+        switch (random.nextInt(depth > 3 ? 1 : 4)) {
+            case 0: return number(depth + 1) + " " + pick("<", "<=", ">", ">=", "==", "!=") + " " + number(depth + 1);
+            case 1: return "(" + condition(depth + 1) + " && " + condition(depth + 1) + ")";
+            case 2: return "(" + condition(depth + 1) + " || " + condition(depth + 1) + ")";
+            default: return "!(" + condition(depth + 1) + ")";
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.psiras.cellularautomata.rule;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RuleTest {
+    private static final String kernel = "kernel box = 1 1 1 / 1 0 1 / 1 1 1\n";
+
+    // The message of the error parsing the text, with its line
+    private static String error(String text) {
+        try {
+            Rule.parse("test", text);
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+        fail("Parsed " + text);
+        return null;
+    }
+
+    @Test
+    public void parsesShippedRules() throws Exception {
+        for (String name : new String[] {"illness.rule", "neighbor.rule"}) {
+            final Rule rule = Rule.load(name);
+            assertTrue(name, (rule.state != null) || (rule.outputs.length > 0));
+        }
+    }
+
+    @Test
+    public void foldsConstants() {
+        final Rule rule = Rule.parse("test", "param p = 2 * 3 + 1\nstate = p % 4\n");
+        assertTrue(rule.state instanceof Expr.Num);
+        assertEquals(3, ((Expr.Num)rule.state).i);
+    }
+
+    @Test
+    public void reportsLines() {
+        assertEquals("test:3: Unknown name: y", error("# comment\nlet x = 1\nstate = y\n"));
+        assertEquals("test:1: Unknown name: y", error("let x = 1 + \\\n  y\nstate = x\n")); // continued lines count as the first
+    }
+
+    @Test
+    public void rejectsNames() {
+        assertEquals("test:1: Unknown function: sqrt", error("state = sqrt(state)\n"));
+        assertEquals("test:2: Name taken: x", error("let x = 1\nlet x = 2\n"));
+        assertEquals("test:1: Neither state nor a channel: x", error("x = 1\n"));
+        assertEquals("test:2: Kernel applied to nothing: box", error(kernel + "state = box\n"));
+        assertEquals("test:2: Kernels sum up the state or a channel, not 1", error(kernel + "state = box(1)\n"));
+    }
+
+    @Test
+    public void rejectsTypes() {
+        assertEquals("test:1: Condition where a number is due", error("state = (state < 1) + 1\n"));
+        assertEquals("test:1: Number where a condition is due", error("state = state ? 1 : 0\n"));
+        assertEquals("test:1: Number where a condition is due", error("state = (1 && state < 2) ? 1 : 0\n"));
+        assertEquals("test:1: min takes 2 arguments", error("state = min(state)\n"));
+    }
+
+    @Test
+    public void rejectsStatements() {
+        assertEquals("test:2: State assigned twice", error("state = 1\nstate = 2\n"));
+        assertEquals("test:1: Kernel isn't an odd square", error("kernel k = 1 1 / 1 1\n"));
+        assertEquals("test:1: States out of [1, 128]", error("states 0\n"));
+        assertEquals("test:1: Param isn't a number: p", error("param p = state\n"));
+        assertEquals("test:1: Unexpected end of line", error("state = 1 +\n"));
+        assertEquals("test:1: Unexpected )", error("state = 1)\n"));
+    }
+
+    @Test
+    public void rejectsIntDivisionByZero() {
+        assertEquals("test:1: Division by zero", error("state = state / 0\n"));
+        assertEquals("test:1: Division by zero", error("state = state % (2 - 2)\n"));
+        Rule.parse("test", "channel a\na = a / 0\n"); // float division is Java's
+    }
+}
@@ -0,0 +1,101 @@
+package com.psiras.cellularautomata.utils;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+// Transforms against the direct sums they stand for, worked out in double
+public class FloatFFTTest {
+    private static final float tolerance = 1e-3f; // of the largest magnitude
+
+    private static float[] noise(Random random, int size) {
+        final float[] values = new float[size];
+        for (int i = 0; i < size; ++i) values[i] = (float)random.nextGaussian();
+        return values;
+    }
+
+    // Forward DFT of a height * width array, the first dimension contiguous
+    private static double[][] dft2(float[] re, float[] im, int width) {
+        final int height = re.length / width;
+        final double[][] result = new double[2][re.length];
+
+        for (int v = 0; v < height; ++v) for (int u = 0; u < width; ++u) {
+            double sre = 0;
+            double sim = 0;
+            for (int y = 0; y < height; ++y) for (int x = 0; x < width; ++x) {
+                final double th = -2 * Math.PI * ((double)u * x / width + (double)v * y / height);
+                final int i = y * width + x;
+                sre += re[i] * Math.cos(th) - im[i] * Math.sin(th);
+                sim += re[i] * Math.sin(th) + im[i] * Math.cos(th);
+            }
+            result[0][v * width + u] = sre;
+            result[1][v * width + u] = sim;
+        }
+        return result;
+    }
+
+    private static void assertClose(String message, double[] expected, float[] actual) {
+        double scale = 1;
+        for (double value : expected) scale = Math.max(scale, Math.abs(value));
+        for (int i = 0; i < expected.length; ++i) {
+            assertEquals(message + " at " + i, expected[i], actual[i], tolerance * scale);
+        }
+    }
+
+    @Test
+    public void transformsLikeDirectSums() {
+        final Random random = new Random(1);
+        for (int width = 1; width <= 64; width <<= 1) for (int height = 1; height <= 16; height <<= 1) {
+            final float[] re = noise(random, height * width);
+            final float[] im = noise(random, height * width);
+            final double[][] expected = dft2(re, im, width);
+
+            FloatFFT.fft2(re, im, width);
+            assertClose(height + "x" + width + " re", expected[0], re);
+            assertClose(height + "x" + width + " im", expected[1], im);
+        }
+    }
+
+    @Test
+    public void invertsTransform() {
+        final Random random = new Random(2);
+        for (int size = 1; size <= 4096; size <<= 1) {
+            final float[] re = noise(random, size);
+            final float[] im = noise(random, size);
+            final double[] rex = new double[size];
+            final double[] imx = new double[size];
+            for (int i = 0; i < size; ++i) {
+                rex[i] = re[i];
+                imx[i] = im[i];
+            }
+
+            FloatFFT.fft(re, im);
+            FloatFFT.ifft(re, im);
+            assertClose(size + " re", rex, re);
+            assertClose(size + " im", imx, im);
+        }
+    }
+
+    @Test
+    public void convolvesCircularly() {
+        final Random random = new Random(3);
+        final int width = 16;
+        final int height = 8;
+        final float[] xre = noise(random, height * width);
+        final float[] yre = noise(random, height * width);
+        final double[] expected = new double[height * width];
+
+        for (int y = 0; y < height; ++y) for (int x = 0; x < width; ++x) {
+            double sum = 0;
+            for (int dy = 0; dy < height; ++dy) for (int dx = 0; dx < width; ++dx) {
+                sum += xre[dy * width + dx] * yre[((y - dy + height) % height) * width + (x - dx + width) % width];
+            }
+            expected[y * width + x] = sum;
+        }
+
+        FloatFFT.convolve(xre, new float[xre.length], yre, new float[yre.length], width, height);
+        assertClose("convolution", expected, yre);
+    }
+}
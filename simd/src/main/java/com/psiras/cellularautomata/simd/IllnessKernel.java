@@ -0,0 +1,72 @@
+package com.psiras.cellularautomata.simd;
+
+import com.psiras.cellularautomata.model.CellularModel;
+import com.psiras.cellularautomata.model.RowKernel;
+import com.psiras.cellularautomata.template.IllnessTemplate;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// IllnessTemplate rule, 8 cells per step widened to int lanes
+class IllnessKernel implements RowKernel {
+    private static final VectorSpecies<Integer> I = IntVector.SPECIES_256;
+    private static final VectorSpecies<Byte> B = ByteVector.SPECIES_64;
+    private static final int range = IllnessTemplate.range;
+    private static final int edge = 1;
+    private final int[] weights = new int[9];
+    private final RowKernel scalar;
+    private final byte[] memory;
+    private final int width;
+
+    IllnessKernel(CellularModel model, RowKernel scalar) {
+        this.scalar = scalar;
+        this.memory = model.memory;
+        this.width = model.width;
+
+        for (int dh = -edge; dh <= edge; ++dh) {
+            for (int dw = -edge; dw <= edge; ++dw) {
+                weights[(dh + edge) * 3 + dw + edge] = IllnessTemplate.weight(dh, dw);
+            }
+        }
+    }
+
+    @Override
+    public void computeRow(int src, int dst, int from, int to) {
+        final int lanes = I.length();
+        int w = from;
+
+        for (; w + lanes <= to; w += lanes) {
+            final int pos = src + w;
+            IntVector neighbours = IntVector.zero(I);
+
+            for (int dh = -edge; dh <= edge; ++dh) {
+                for (int dw = -edge; dw <= edge; ++dw) {
+                    final int weight = weights[(dh + edge) * 3 + dw + edge];
+                    if (weight == 0) continue;
+                    final IntVector value = load(pos + dh * width + dw);
+                    neighbours = neighbours.add(weight == 1 ? value : value.mul(weight));
+                }
+            }
+
+            // neighbours / 8 rounding towards zero, as the scalar rule does
+            final IntVector eighth = neighbours.add(neighbours.lanewise(VectorOperators.ASHR, 31).and(7))
+                    .lanewise(VectorOperators.ASHR, 3);
+            final IntVector ill = eighth.add(5).min(range - 1);
+            final IntVector healthy = IntVector.broadcast(I, 3)
+                    .blend(2, neighbours.lt(range * 9))
+                    .blend(0, neighbours.lt(5));
+            final IntVector state = load(pos);
+            final IntVector next = ill.blend(healthy, state.eq(0))
+                    .blend(0, state.eq(range - 1));
+
+            ((ByteVector)next.convertShape(VectorOperators.I2B, B, 0)).intoArray(memory, dst + w);
+        }
+        if (w < to) scalar.computeRow(src, dst, w, to);
+    }
+
+    private IntVector load(int pos) {
+        return (IntVector)ByteVector.fromArray(B, memory, pos).convertShape(VectorOperators.B2I, I, 0);
+    }
+}
@@ -0,0 +1,75 @@
+package com.psiras.cellularautomata.simd;
+
+import com.psiras.cellularautomata.model.ChannelField;
+import com.psiras.cellularautomata.model.RowKernel;
+import com.psiras.cellularautomata.template.NeighborTemplate;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// NeighborTemplate rule over a float ChannelField, 8 cells per step.
+// Operations keep the scalar evaluation order, so results are bit-identical
+class NeighborKernel implements RowKernel {
+    private static final VectorSpecies<Float> F = FloatVector.SPECIES_256;
+    private static final VectorSpecies<Byte> B = ByteVector.SPECIES_64;
+    private static final int edge = 1;
+    private final NeighborTemplate model;
+    private final ChannelField field;
+    private final RowKernel scalar;
+    private final float[] floats;
+    private final byte[] memory;
+    private final int width;
+
+    NeighborKernel(NeighborTemplate model, RowKernel scalar) {
+        this.model = model;
+        this.field = model.field;
+        this.scalar = scalar;
+        this.floats = field.floats;
+        this.memory = model.memory;
+        this.width = model.width;
+    }
+
+    @Override
+    public void computeRow(int src, int dst, int from, int to) {
+        final int lanes = F.length();
+        final int line = src / width;
+        final int source = field.offset(line);
+        final int dest = field.offset(model.frame(line, 1));
+        final int plane = field.plane;
+        final float cells = (float)(((edge << 1) + 1) * ((edge << 1) + 1)); // divided as the scalar kernel does
+        int w = from;
+
+        for (; w + lanes <= to; w += lanes) {
+            FloatVector sa = FloatVector.zero(F);
+            FloatVector sb = FloatVector.zero(F);
+            FloatVector sc = FloatVector.zero(F);
+
+            for (int dh = -edge; dh <= edge; ++dh) {
+                for (int dw = -edge; dw <= edge; ++dw) {
+                    final int index = source + w + dh * width + dw;
+                    sa = sa.add(FloatVector.fromArray(F, floats, index + NeighborTemplate.A * plane));
+                    sb = sb.add(FloatVector.fromArray(F, floats, index + NeighborTemplate.B * plane));
+                    sc = sc.add(FloatVector.fromArray(F, floats, index + NeighborTemplate.C * plane));
+                }
+            }
+
+            final FloatVector ca = sa.div(cells);
+            final FloatVector cb = sb.div(cells);
+            final FloatVector cc = sc.div(cells);
+            final FloatVector a = transition(ca, cb, cc, model.alpha, model.gamma);
+            a.intoArray(floats, dest + w + NeighborTemplate.A * plane);
+            transition(cb, cc, ca, model.beta, model.alpha).intoArray(floats, dest + w + NeighborTemplate.B * plane);
+            transition(cc, ca, cb, model.gamma, model.beta).intoArray(floats, dest + w + NeighborTemplate.C * plane);
+
+            final FloatVector next = FloatVector.zero(F).blend(1, a.eq(1));
+            ((ByteVector)next.convertShape(VectorOperators.F2B, B, 0)).intoArray(memory, dst + w);
+        }
+        if (w < to) scalar.computeRow(src, dst, w, to);
+    }
+
+    private static FloatVector transition(FloatVector a, FloatVector b, FloatVector c, float factor1, float factor2) {
+        return a.mul(b.mul(factor1).add(1).sub(c.mul(factor2))).max(0).min(1);
+    }
+}
@@ -0,0 +1,22 @@
+package com.psiras.cellularautomata.simd;
+
+import com.psiras.cellularautomata.model.CellularModel;
+import com.psiras.cellularautomata.model.ChannelField;
+import com.psiras.cellularautomata.model.RowKernel;
+import com.psiras.cellularautomata.template.IllnessTemplate;
+import com.psiras.cellularautomata.template.NeighborTemplate;
+
+// Exact template classes only, subclasses may change the rule
+public class VectorKernels implements RowKernel.Factory {
+    @Override
+    public RowKernel create(CellularModel model, RowKernel scalar) {
+        if (model.getClass() == IllnessTemplate.class) {
+            return new IllnessKernel(model, scalar);
+        }
+        if ((model.getClass() == NeighborTemplate.class)
+                && (((NeighborTemplate)model).field.precision == ChannelField.Precision.FLOAT)) {
+            return new NeighborKernel((NeighborTemplate)model, scalar);
+        }
+        return null;
+    }
+}